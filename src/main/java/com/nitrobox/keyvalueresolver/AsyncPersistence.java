@@ -0,0 +1,57 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Non-blocking variant of {@link Persistence}. Every call starts the work and gives back a future, that is completed when the work is
+ * done. Used by the async methods of KeyValueResolverImpl, see {@link KeyValueResolverImpl#setAsyncPersistence(AsyncPersistence)}. An
+ * existing Persistence is adapted with {@link AsyncPersistenceAdapter}.
+ * <p>
+ * The futures may be completed on any thread, keep the work done in callbacks short or hand it to an executor of your own.
+ */
+public interface AsyncPersistence {
+
+    /**
+     * Load all overridden values for a single key.
+     *
+     * @return a future completed with the KeyValues or with null, when no value is found
+     */
+    CompletableFuture<KeyValues> load(String key, DomainSpecificValueFactory domainSpecificValueFactory);
+
+    /**
+     * Load all overridden values for several keys at once.
+     *
+     * @return a future completed with the KeyValues of the keys that have values
+     */
+    CompletableFuture<Collection<KeyValues>> loadAll(Collection<String> keys, DomainSpecificValueFactory domainSpecificValueFactory);
+
+    CompletableFuture<Void> store(String key, KeyValues keyValues, DomainSpecificValue domainSpecificValue);
+
+    /**
+     * Remove a complete key from persistence.
+     */
+    CompletableFuture<Void> remove(String key);
+
+    /**
+     * Remove a DomainSpecificValue from persistence.
+     */
+    CompletableFuture<Void> remove(String key, DomainSpecificValue domainSpecificValue);
+}
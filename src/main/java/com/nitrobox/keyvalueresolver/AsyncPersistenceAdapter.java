@@ -0,0 +1,69 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Collection;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Adapts a blocking {@link Persistence} to {@link AsyncPersistence}, by running its calls on an executor. The threads of the executor
+ * block for the calls to persistence instead of the callers. Size the executor for the number of calls to persistence, that may run at
+ * the same time, e.g. the size of the connection pool.
+ */
+public class AsyncPersistenceAdapter implements AsyncPersistence {
+
+    private final Persistence persistence;
+    private final Executor executor;
+
+    public AsyncPersistenceAdapter(final Persistence persistence, final Executor executor) {
+        this.persistence = Objects.requireNonNull(persistence, "\"persistence\" must not be null");
+        this.executor = Objects.requireNonNull(executor, "\"executor\" must not be null");
+    }
+
+    @Override
+    public CompletableFuture<KeyValues> load(final String key, final DomainSpecificValueFactory domainSpecificValueFactory) {
+        return CompletableFuture.supplyAsync(() -> persistence.load(key, domainSpecificValueFactory), executor);
+    }
+
+    @Override
+    public CompletableFuture<Collection<KeyValues>> loadAll(final Collection<String> keys,
+            final DomainSpecificValueFactory domainSpecificValueFactory) {
+        return CompletableFuture.supplyAsync(() -> persistence.loadAll(keys, domainSpecificValueFactory), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> store(final String key, final KeyValues keyValues, final DomainSpecificValue domainSpecificValue) {
+        return CompletableFuture.runAsync(() -> persistence.store(key, keyValues, domainSpecificValue), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(final String key) {
+        return CompletableFuture.runAsync(() -> persistence.remove(key), executor);
+    }
+
+    @Override
+    public CompletableFuture<Void> remove(final String key, final DomainSpecificValue domainSpecificValue) {
+        return CompletableFuture.runAsync(() -> persistence.remove(key, domainSpecificValue), executor);
+    }
+
+    public Persistence getPersistence() {
+        return persistence;
+    }
+}
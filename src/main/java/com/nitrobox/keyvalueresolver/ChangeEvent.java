@@ -0,0 +1,118 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Objects;
+
+/**
+ * A change of a single DomainSpecificValue of a key: it was added, its value was changed or it was removed. A DomainSpecificValue is
+ * identified by its key, pattern and change set.
+ */
+public final class ChangeEvent {
+
+    public enum Type {
+        ADDED, CHANGED, REMOVED
+    }
+
+    private final Type type;
+    private final String key;
+    private final String pattern;
+    private final String changeSet;
+    private final Object oldValue;
+    private final Object newValue;
+
+    private ChangeEvent(Type type, String key, String pattern, String changeSet, Object oldValue, Object newValue) {
+        this.type = type;
+        this.key = key;
+        this.pattern = pattern;
+        this.changeSet = changeSet;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    static ChangeEvent added(String key, DomainSpecificValue domainSpecificValue) {
+        return new ChangeEvent(Type.ADDED, key, domainSpecificValue.getPattern(), domainSpecificValue.getChangeSet(), null,
+                domainSpecificValue.getValue());
+    }
+
+    static ChangeEvent changed(String key, DomainSpecificValue domainSpecificValue, Object oldValue, Object newValue) {
+        return new ChangeEvent(Type.CHANGED, key, domainSpecificValue.getPattern(), domainSpecificValue.getChangeSet(), oldValue, newValue);
+    }
+
+    static ChangeEvent removed(String key, DomainSpecificValue domainSpecificValue, Object oldValue) {
+        return new ChangeEvent(Type.REMOVED, key, domainSpecificValue.getPattern(), domainSpecificValue.getChangeSet(), oldValue, null);
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * @return the change set or null, when the value belongs to no change set
+     */
+    public String getChangeSet() {
+        return changeSet;
+    }
+
+    /**
+     * @return the value before the change, null for an added value
+     */
+    public Object getOldValue() {
+        return oldValue;
+    }
+
+    /**
+     * @return the value after the change, null for a removed value
+     */
+    public Object getNewValue() {
+        return newValue;
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ChangeEvent)) {
+            return false;
+        }
+        final ChangeEvent that = (ChangeEvent) o;
+        return type == that.type && key.equals(that.key) && pattern.equals(that.pattern) && Objects.equals(changeSet, that.changeSet)
+                && Objects.equals(oldValue, that.oldValue) && Objects.equals(newValue, that.newValue);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, key, pattern, changeSet, oldValue, newValue);
+    }
+
+    @Override
+    public String toString() {
+        return "ChangeEvent{" + type + " key=\"" + key + "\", pattern=\"" + pattern + '"'
+                + (changeSet != null ? ", changeSet=\"" + changeSet + '"' : "") + ", oldValue=\"" + oldValue + "\", newValue=\"" + newValue
+                + "\"}";
+    }
+}
@@ -2,10 +2,6 @@
  * KeyValueResolver - An dynamic Key-Value Store
  * Copyright (C) 2022 Nitrobox GmbH
  *
- * This Software is a fork of Roperty - An advanced property
- * management and retrival system
- * Copyright (C) 2013 PARSHIP GmbH
- *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
@@ -21,20 +17,22 @@
 
 package com.nitrobox.keyvalueresolver;
 
+import java.util.List;
+
 /**
- * @author finsterwalder
- * @since 2013-09-13 10:49
+ * Gets told about the DomainSpecificValues added, changed and removed in a KeyValueResolver, by its writes, removeChangeSet and reloads.
+ * Values loaded from persistence for keys queried for the first time are no changes.
+ *
+ * @see KeyValueResolverImpl#addChangeListener(ChangeListener)
  */
-public class StringPrefixMatcher implements Matcher {
-
-    private final String prefixString;
-
-    public StringPrefixMatcher(final String prefixString) {
-        this.prefixString = prefixString;
-    }
+@FunctionalInterface
+public interface ChangeListener {
 
-    @Override
-    public boolean matches(String domainString) {
-        return prefixString.equals(domainString.substring(0, Math.min(domainString.length(), prefixString.length())));
-    }
+    /**
+     * Called asynchronously with a batch of changes, in the order they were made. Batches are delivered one after the other, never
+     * concurrently, so a slow listener delays the following batches.
+     *
+     * @param events the changes, unmodifiable
+     */
+    void onChanges(List<ChangeEvent> events);
 }
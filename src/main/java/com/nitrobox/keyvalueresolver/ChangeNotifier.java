@@ -0,0 +1,197 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delivers the ChangeEvents of a ValuesStore to its ChangeListeners. Writers only queue their events, a single task on the executor at a
+ * time takes them from the queue in batches and calls the listeners, so events are delivered in the order they were queued. Without
+ * listeners, no events are created at all.
+ */
+final class ChangeNotifier {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ChangeNotifier.class);
+    private static final int MAX_BATCH_SIZE = 1024;
+
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private final Queue<ChangeEvent> pendingEvents = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean delivering = new AtomicBoolean();
+    private volatile Executor executor = ForkJoinPool.commonPool();
+
+    void addListener(final ChangeListener listener) {
+        listeners.add(Objects.requireNonNull(listener, "\"listener\" must not be null"));
+    }
+
+    void removeListener(final ChangeListener listener) {
+        listeners.remove(listener);
+    }
+
+    void setExecutor(final Executor executor) {
+        this.executor = Objects.requireNonNull(executor, "\"executor\" must not be null");
+    }
+
+    /**
+     * @return a list to collect the events of a change in or null, when there are no listeners to tell
+     */
+    List<ChangeEvent> newEvents() {
+        return listeners.isEmpty() ? null : new ArrayList<>();
+    }
+
+    /**
+     * Queue events for delivery. Call it while the changed keys are still locked, so the events of each key are queued in order.
+     *
+     * @param events the events collected in a list of newEvents, may be null
+     */
+    void publish(final List<ChangeEvent> events) {
+        if (events == null || events.isEmpty()) {
+            return;
+        }
+        pendingEvents.addAll(events);
+        scheduleDelivery();
+    }
+
+    private void scheduleDelivery() {
+        if (delivering.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::deliver);
+            } catch (RejectedExecutionException e) {
+                delivering.set(false);
+                LOGGER.warn("Could not deliver {} change events", pendingEvents.size(), e);
+            }
+        }
+    }
+
+    private void deliver() {
+        try {
+            for (List<ChangeEvent> batch = nextBatch(); !batch.isEmpty(); batch = nextBatch()) {
+                for (ChangeListener listener : listeners) {
+                    try {
+                        listener.onChanges(batch);
+                    } catch (RuntimeException e) {
+                        LOGGER.warn("ChangeListener {} failed", listener, e);
+                    }
+                }
+            }
+        } finally {
+            delivering.set(false);
+        }
+        if (!pendingEvents.isEmpty()) { // queued after the last batch was taken, but before delivering was reset
+            scheduleDelivery();
+        }
+    }
+
+    private List<ChangeEvent> nextBatch() {
+        final List<ChangeEvent> batch = new ArrayList<>();
+        ChangeEvent event;
+        while (batch.size() < MAX_BATCH_SIZE && (event = pendingEvents.poll()) != null) {
+            batch.add(event);
+        }
+        return Collections.unmodifiableList(batch);
+    }
+
+    /**
+     * @return the values of all KeyValues at this point in time, to find the changes made to them later with addChanges
+     */
+    static Map<String, ValuesState> capture(final Collection<KeyValues> keyValues) {
+        final Map<String, ValuesState> result = new HashMap<>(keyValues.size() * 4 / 3 + 1);
+        for (KeyValues kv : keyValues) {
+            result.put(kv.getKey(), capture(kv));
+        }
+        return result;
+    }
+
+    static ValuesState capture(final KeyValues keyValues) {
+        return keyValues == null ? ValuesState.EMPTY : new ValuesState(keyValues.getDomainSpecificValues());
+    }
+
+    /**
+     * Add the events turning the values of all keys from one state into another.
+     */
+    static void addChanges(final Map<String, ValuesState> before, final Map<String, ValuesState> after, final List<ChangeEvent> events) {
+        after.forEach((key, state) -> addChanges(key, before.getOrDefault(key, ValuesState.EMPTY), state, events));
+        before.forEach((key, state) -> {
+            if (!after.containsKey(key)) {
+                addChanges(key, state, ValuesState.EMPTY, events);
+            }
+        });
+    }
+
+    /**
+     * Add the events turning the values of a key from one state into another. Both states are sorted by precedence, so they are merged
+     * like sorted lists.
+     */
+    static void addChanges(final String key, final ValuesState before, final ValuesState after, final List<ChangeEvent> events) {
+        int i = 0;
+        int j = 0;
+        while (i < before.size() || j < after.size()) {
+            final int order = i == before.size() ? 1 : j == after.size() ? -1 : before.values[i].compareTo(after.values[j]);
+            if (order < 0) {
+                events.add(ChangeEvent.removed(key, before.values[i], before.rawValues[i]));
+                i++;
+            } else if (order > 0) {
+                events.add(ChangeEvent.added(key, after.values[j]));
+                j++;
+            } else {
+                if (!Objects.equals(before.rawValues[i], after.rawValues[j])) {
+                    events.add(ChangeEvent.changed(key, after.values[j], before.rawValues[i], after.rawValues[j]));
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    /**
+     * The DomainSpecificValues of a key with their values, kept apart as the value of a DomainSpecificValue may be changed in place.
+     */
+    static final class ValuesState {
+
+        private static final ValuesState EMPTY = new ValuesState(Collections.emptySet());
+
+        private final DomainSpecificValue[] values;
+        private final Object[] rawValues;
+
+        private ValuesState(final Collection<DomainSpecificValue> domainSpecificValues) {
+            values = domainSpecificValues.toArray(new DomainSpecificValue[0]);
+            rawValues = new Object[values.length];
+            for (int i = 0; i < values.length; i++) {
+                rawValues[i] = values[i].getValue();
+            }
+        }
+
+        private int size() {
+            return values.length;
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Assigns an id to every change set used by a value, so the active change sets of a query can be represented as a bitmask and checking
+ * whether a value is active becomes a single AND. The first 64 change sets get a bit, values of further change sets are checked against
+ * the collection of active change sets instead.
+ */
+public class ChangeSetRegistry {
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile int size; // written after adding an id, so whoever reads a size also sees those ids
+
+    /**
+     * Get the bit of a change set, registering the change set if it is not yet known.
+     *
+     * @return the bit of the change set or 0, when the change set has no bit and must be checked by name
+     */
+    long bitOf(String changeSet) {
+        Integer id = ids.get(changeSet);
+        if (id == null) {
+            id = add(changeSet);
+        }
+        return id < Long.SIZE ? 1L << id : 0L;
+    }
+
+    private synchronized int add(String changeSet) {
+        Integer id = ids.get(changeSet);
+        if (id == null) {
+            id = size;
+            ids.put(changeSet, id);
+            size = id + 1;
+        }
+        return id;
+    }
+
+    /**
+     * @return the bits of all registered active change sets
+     */
+    long maskOf(Collection<String> activeChangeSets) {
+        long mask = 0L;
+        for (String changeSet : activeChangeSets) {
+            final Integer id = ids.get(changeSet);
+            if (id != null && id < Long.SIZE) {
+                mask |= 1L << id;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Get the mask for the active change sets of a resolver. MapBackedDomainResolver keeps its mask precomputed.
+     *
+     * @param activeChangeSets the active change sets already taken from the resolver
+     */
+    long maskOf(DomainResolver resolver, Collection<String> activeChangeSets) {
+        if (resolver instanceof MapBackedDomainResolver) {
+            return ((MapBackedDomainResolver) resolver).getActiveChangeSetMask(this);
+        }
+        return maskOf(activeChangeSets);
+    }
+
+    /**
+     * @return number of registered change sets
+     */
+    public int size() {
+        return size;
+    }
+}
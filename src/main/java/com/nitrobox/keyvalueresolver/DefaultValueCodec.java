@@ -0,0 +1,124 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Codec for null and values of type String, Integer, Long, Double, Float, Boolean and BigDecimal. Each value is written as a type tag
+ * followed by the value. Subclasses can support further types, by writing a tag of their own, larger than 31, in write and reading
+ * their tags in readTagged.
+ */
+public class DefaultValueCodec implements ValueCodec {
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INTEGER = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte FLOAT = 5;
+    private static final byte TRUE = 6;
+    private static final byte FALSE = 7;
+    private static final byte BIG_DECIMAL = 8;
+
+    @Override
+    public void write(final Object value, final DataOutput out) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            writeString((String) value, out);
+        } else if (value instanceof Integer) {
+            out.writeByte(INTEGER);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeDouble((Double) value);
+        } else if (value instanceof Float) {
+            out.writeByte(FLOAT);
+            out.writeFloat((Float) value);
+        } else if (value instanceof Boolean) {
+            out.writeByte((Boolean) value ? TRUE : FALSE);
+        } else if (value instanceof BigDecimal) {
+            out.writeByte(BIG_DECIMAL);
+            writeString(value.toString(), out);
+        } else {
+            throw new IllegalArgumentException("Values of " + value.getClass() + " are not supported by " + getClass().getSimpleName());
+        }
+    }
+
+    @Override
+    public Object read(final DataInput in) throws IOException {
+        final byte tag = in.readByte();
+        switch (tag) {
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case FLOAT:
+                return in.readFloat();
+            case TRUE:
+                return Boolean.TRUE;
+            case FALSE:
+                return Boolean.FALSE;
+            case BIG_DECIMAL:
+                return new BigDecimal(readString(in));
+            default:
+                return readTagged(tag, in);
+        }
+    }
+
+    /**
+     * Read a value of a type tag unknown to this codec.
+     */
+    protected Object readTagged(final byte tag, final DataInput in) throws IOException {
+        throw new IOException("Unknown value type tag: " + tag);
+    }
+
+    /**
+     * Write a string of any length, unlike DataOutput.writeUTF.
+     */
+    public static void writeString(final String value, final DataOutput out) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    public static String readString(final DataInput in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            throw new IOException("Invalid string length: " + length);
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
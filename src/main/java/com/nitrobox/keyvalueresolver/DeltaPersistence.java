@@ -0,0 +1,50 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+/**
+ * A Persistence that numbers its changes with increasing versions and gives the changes made since a version, so reload applies only the
+ * values changed since the last reload, instead of reloading all values.
+ * <p>
+ * KeyValueResolver remembers the version of the values it loaded and asks for the changes since then on every reload. A snapshot keeps
+ * the version of its values, so a KeyValueResolver started from it asks for the changes made since the snapshot was written. When it
+ * does not know the version, e.g. after values were loaded from a Persistence that is no DeltaPersistence, it reloads all values once
+ * with {@link #reload}. Applying changes is idempotent, so changes made while all values are loaded may be contained in the next changes
+ * again.
+ */
+public interface DeltaPersistence extends Persistence {
+
+    /**
+     * Version of values that were not loaded from a DeltaPersistence.
+     */
+    long UNKNOWN_VERSION = Long.MIN_VALUE;
+
+    /**
+     * @return the version of the latest change persisted
+     */
+    long currentVersion();
+
+    /**
+     * Get the changes made after a version. Is called by KeyValueResolver on reload, with the version of the previous changes.
+     *
+     * @param version a version given by currentVersion or by the previous changes
+     * @return the changes made after the version, with the version of the latest change contained, each value changed or removed only
+     *         once, see {@link PersistedChanges}
+     */
+    PersistedChanges changesSince(long version, DomainSpecificValueFactory domainSpecificValueFactory);
+}
@@ -21,6 +21,7 @@
 
 package com.nitrobox.keyvalueresolver;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Objects;
 
@@ -38,20 +39,21 @@ public class DomainSpecificValue implements Comparable<DomainSpecificValue> {
     private final String pattern;
     private final int ordering;
     private Object value;
-    private final Matcher matcher;
+    private Matcher matcher; // created on first use, resolution through KeyValues usually matches encoded patterns instead
     private final String changeSet;
 
     public static DomainSpecificValue withChangeSet(Object value, String changeSet, String... domainValues) {
-        return new DomainSpecificValue(value, changeSet, domainValues);
+        final String pattern = domainValues.length == 0 ? "" : String.join("|", domainValues) + "|";
+        return create(value, changeSet, pattern, getOrder(domainValues));
     }
 
     public static DomainSpecificValue withoutChangeSet(Object value, String... domainValues) {
-        return new DomainSpecificValue(value, null, domainValues);
+        return withChangeSet(value, null, domainValues);
     }
 
     public static DomainSpecificValue withPattern(Object value, String changeSet, String pattern) {
         if (pattern == null || pattern.trim().length() == 0) {
-            return new DomainSpecificValue(value, changeSet, "", 1);
+            return create(value, changeSet, "", 1);
         }
         if (!pattern.endsWith("|")) {
             throw new IllegalArgumentException("Pattern must end with a pipe character: '|'");
@@ -59,7 +61,27 @@ public class DomainSpecificValue implements Comparable<DomainSpecificValue> {
 
         final String[] domainValues = pattern.split("\\|");
         int order = getOrder(domainValues);
-        return new DomainSpecificValue(value, changeSet, pattern, order);
+        return create(value, changeSet, pattern, order);
+    }
+
+    /**
+     * Integer, Long, Double and Boolean values are kept in specialized subclasses, that also store the value unboxed for the typed
+     * getters.
+     */
+    private static DomainSpecificValue create(Object value, String changeSet, String pattern, int ordering) {
+        if (value instanceof Integer) {
+            return new IntValue(value, changeSet, pattern, ordering);
+        }
+        if (value instanceof Long) {
+            return new LongValue(value, changeSet, pattern, ordering);
+        }
+        if (value instanceof Double) {
+            return new DoubleValue(value, changeSet, pattern, ordering);
+        }
+        if (value instanceof Boolean) {
+            return new BooleanValue(value, changeSet, pattern, ordering);
+        }
+        return new DomainSpecificValue(value, changeSet, pattern, ordering);
     }
 
     private static int getOrder(String[] domainValues) {
@@ -79,23 +101,15 @@ public class DomainSpecificValue implements Comparable<DomainSpecificValue> {
         this.pattern = pattern;
         this.value = value;
         this.changeSet = changeSet;
-        this.matcher = createMatcher(pattern);
-    }
-
-    private DomainSpecificValue(Object value, String changeSet, String[] domainValues) {
-        this.ordering = getOrder(domainValues);
-        this.pattern = domainValues.length == 0 ? "" : String.join("|", domainValues) + "|";
-        this.value = value;
-        this.changeSet = changeSet;
-        this.matcher = createMatcher(pattern);
     }
 
-    private Matcher createMatcher(String pattern) {
-        if (pattern.contains("*")) {
-            return new RegexMatcher(pattern.replaceAll("\\|", "\\\\|").replaceAll("\\*", "[^|]*") + ".*");
-        } else {
-            return new StringPrefixMatcher(pattern);
+    private Matcher getMatcher() {
+        Matcher result = matcher;
+        if (result == null) {
+            result = new SegmentMatcher(pattern);
+            matcher = result;
         }
+        return result;
     }
 
     /**
@@ -132,7 +146,7 @@ public class DomainSpecificValue implements Comparable<DomainSpecificValue> {
 	public boolean equals(Object o) {
         if (this == o)
             return true;
-        if (o == null || getClass() != o.getClass())
+        if (!(o instanceof DomainSpecificValue))
             return false;
 
         DomainSpecificValue that = (DomainSpecificValue) o;
@@ -176,11 +190,54 @@ public class DomainSpecificValue implements Comparable<DomainSpecificValue> {
         this.value = value;
     }
 
+    /**
+     * @return the value of a DomainSpecificValue as the type the caller expects, or the default value without a DomainSpecificValue
+     */
+    @SuppressWarnings("unchecked") // values are stored untyped, callers of the generic getters choose the type they stored
+    /*package*/ static <T> T valueOrDefault(final DomainSpecificValue domainSpecificValue, final T defaultValue) {
+        return domainSpecificValue == null ? defaultValue : (T) domainSpecificValue.value;
+    }
+
+    /**
+     * @throws ClassCastException when the value is not an Integer
+     */
+    public int getInt() {
+        return (Integer) value;
+    }
+
+    /**
+     * @throws ClassCastException when the value is not a Long
+     */
+    public long getLong() {
+        return (Long) value;
+    }
+
+    /**
+     * @throws ClassCastException when the value is not a Double
+     */
+    public double getDouble() {
+        return (Double) value;
+    }
+
+    /**
+     * @throws ClassCastException when the value is not a Boolean
+     */
+    public boolean getBoolean() {
+        return (Boolean) value;
+    }
+
     /**
      * This method is used to determine, whether this DomainSpecificValue matches the provided domain string
      */
     public boolean patternMatches(final String domainStr) {
-        return matcher.matches(domainStr);
+        return getMatcher().matches(domainStr);
+    }
+
+    /**
+     * This method is used to determine, whether this DomainSpecificValue matches the provided, already resolved domain values
+     */
+    public boolean patternMatches(final String[] domainValues, final int length) {
+        return getMatcher().matches(domainValues, length);
     }
 
     public boolean isInChangeSets(final Collection<String> activeChangeSets) {
@@ -218,6 +275,135 @@ public class DomainSpecificValue implements Comparable<DomainSpecificValue> {
         if (isDefault()) {
             return new String[0];
         }
-        return pattern.split("\\|");
+        int count = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '|') {
+                count++;
+            }
+        }
+        final String[] domainValues = new String[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            final int end = pattern.indexOf('|', start);
+            domainValues[i] = pattern.substring(start, end);
+            start = end + 1;
+        }
+        while (count > 0 && domainValues[count - 1].isEmpty()) {
+            count--; // like String.split, drop trailing empty domain values
+        }
+        return count == domainValues.length ? domainValues : Arrays.copyOf(domainValues, count);
+    }
+
+    /*
+     * The specialized subclasses keep the boxed value as well, so getValue() does not allocate. When the value is changed to a value of
+     * another type, the typed getter falls back to the boxed value.
+     */
+
+    private static final class IntValue extends DomainSpecificValue {
+
+        private int intValue;
+        private boolean unboxed;
+
+        private IntValue(Object value, String changeSet, String pattern, int ordering) {
+            super(value, changeSet, pattern, ordering);
+            unbox(value);
+        }
+
+        @Override
+        public void setValue(final Object value) {
+            super.setValue(value);
+            unbox(value);
+        }
+
+        private void unbox(final Object value) {
+            unboxed = value instanceof Integer;
+            intValue = unboxed ? (Integer) value : 0;
+        }
+
+        @Override
+        public int getInt() {
+            return unboxed ? intValue : super.getInt();
+        }
+    }
+
+    private static final class LongValue extends DomainSpecificValue {
+
+        private long longValue;
+        private boolean unboxed;
+
+        private LongValue(Object value, String changeSet, String pattern, int ordering) {
+            super(value, changeSet, pattern, ordering);
+            unbox(value);
+        }
+
+        @Override
+        public void setValue(final Object value) {
+            super.setValue(value);
+            unbox(value);
+        }
+
+        private void unbox(final Object value) {
+            unboxed = value instanceof Long;
+            longValue = unboxed ? (Long) value : 0L;
+        }
+
+        @Override
+        public long getLong() {
+            return unboxed ? longValue : super.getLong();
+        }
+    }
+
+    private static final class DoubleValue extends DomainSpecificValue {
+
+        private double doubleValue;
+        private boolean unboxed;
+
+        private DoubleValue(Object value, String changeSet, String pattern, int ordering) {
+            super(value, changeSet, pattern, ordering);
+            unbox(value);
+        }
+
+        @Override
+        public void setValue(final Object value) {
+            super.setValue(value);
+            unbox(value);
+        }
+
+        private void unbox(final Object value) {
+            unboxed = value instanceof Double;
+            doubleValue = unboxed ? (Double) value : 0.0;
+        }
+
+        @Override
+        public double getDouble() {
+            return unboxed ? doubleValue : super.getDouble();
+        }
+    }
+
+    private static final class BooleanValue extends DomainSpecificValue {
+
+        private boolean booleanValue;
+        private boolean unboxed;
+
+        private BooleanValue(Object value, String changeSet, String pattern, int ordering) {
+            super(value, changeSet, pattern, ordering);
+            unbox(value);
+        }
+
+        @Override
+        public void setValue(final Object value) {
+            super.setValue(value);
+            unbox(value);
+        }
+
+        private void unbox(final Object value) {
+            unboxed = value instanceof Boolean;
+            booleanValue = unboxed && (Boolean) value;
+        }
+
+        @Override
+        public boolean getBoolean() {
+            return unboxed ? booleanValue : super.getBoolean();
+        }
     }
 }
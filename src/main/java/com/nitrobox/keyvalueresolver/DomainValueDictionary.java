@@ -0,0 +1,110 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps each distinct domain value used in patterns to an int id, so patterns can be stored as int[] and compared without comparing
+ * strings. The wildcard "*" always has the id WILDCARD. Domain values that only occur in queries are never added, they are encoded as
+ * UNKNOWN, which does not match any pattern segment.
+ * <p>
+ * Encoded patterns are shared: all patterns with the same text use the same int[] instance.
+ */
+public class DomainValueDictionary {
+
+    public static final int WILDCARD = 0;
+    public static final int UNKNOWN = -1;
+    private static final String WILDCARD_VALUE = "*";
+    private static final char SEPARATOR = '|';
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private final Map<String, int[]> encodedPatterns = new ConcurrentHashMap<>();
+    private volatile int size = WILDCARD + 1; // written after adding an id, so whoever reads a size also sees those ids
+
+    public DomainValueDictionary() {
+        ids.put(WILDCARD_VALUE, WILDCARD);
+    }
+
+    /**
+     * Get the id of a domain value, adding the domain value to the dictionary if it is not yet known.
+     */
+    int idOf(String domainValue) {
+        final Integer id = ids.get(domainValue);
+        if (id != null) {
+            return id;
+        }
+        return add(domainValue);
+    }
+
+    private synchronized int add(String domainValue) {
+        Integer id = ids.get(domainValue);
+        if (id == null) {
+            id = size;
+            ids.put(domainValue, id);
+            size = id + 1;
+        }
+        return id;
+    }
+
+    /**
+     * Get the id of a domain value without adding it to the dictionary.
+     *
+     * @return the id or UNKNOWN, when the domain value is not used in any pattern
+     */
+    int lookup(String domainValue) {
+        final Integer id = ids.get(domainValue);
+        return id == null ? UNKNOWN : id;
+    }
+
+    /**
+     * Encode a pattern like "a|*|b|" into the ids of its segments. Every segment is encoded literally, a segment "*" becomes WILDCARD.
+     */
+    int[] encodePattern(String pattern) {
+        final int[] encoded = encodedPatterns.get(pattern);
+        if (encoded != null) {
+            return encoded;
+        }
+        return encodedPatterns.computeIfAbsent(pattern, this::encode);
+    }
+
+    private int[] encode(String pattern) {
+        int count = 0;
+        for (int i = 0; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == SEPARATOR) {
+                count++;
+            }
+        }
+        final int[] result = new int[count];
+        int start = 0;
+        for (int i = 0; i < count; i++) {
+            final int end = pattern.indexOf(SEPARATOR, start);
+            result[i] = idOf(pattern.substring(start, end));
+            start = end + 1;
+        }
+        return result;
+    }
+
+    /**
+     * @return number of distinct domain values known, including the wildcard
+     */
+    public int size() {
+        return size;
+    }
+}
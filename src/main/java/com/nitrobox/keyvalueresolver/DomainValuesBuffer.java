@@ -0,0 +1,114 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Reusable per-thread buffer for the domain values resolved during a single query. Avoids allocating a new array or domain string for
+ * every lookup. A DomainResolver may itself query KeyValueResolver while it is asked for domain values, in that case the nested query gets
+ * its own buffer.
+ */
+final class DomainValuesBuffer {
+
+    private static final String DOMAIN_SEPARATOR = "|";
+    private static final ThreadLocal<DomainValuesBuffer> BUFFER = ThreadLocal.withInitial(DomainValuesBuffer::new);
+
+    private String[] values = new String[8];
+    private int[] encodedValues = new int[8];
+    private int length;
+    private boolean inUse;
+
+    static DomainValuesBuffer acquire() {
+        final DomainValuesBuffer buffer = BUFFER.get();
+        if (buffer.inUse) {
+            return new DomainValuesBuffer();
+        }
+        buffer.inUse = true;
+        return buffer;
+    }
+
+    void release() {
+        Arrays.fill(values, 0, length, null);
+        length = 0;
+        inUse = false;
+    }
+
+    /**
+     * Query the resolver once for each domain. Null values are stored as the empty string.
+     *
+     * @return the number of domain values resolved
+     * @throws IllegalArgumentException when a domain value contains the domain separator
+     */
+    int resolve(final Iterable<String> domains, final DomainResolver resolver) {
+        if (domains instanceof List && domains instanceof RandomAccess) {
+            final List<String> domainList = (List<String>) domains;
+            for (int i = 0; i < domainList.size(); i++) {
+                add(resolveDomainValue(resolver, domainList.get(i)));
+            }
+        } else {
+            for (String domain : domains) {
+                add(resolveDomainValue(resolver, domain));
+            }
+        }
+        return length;
+    }
+
+    static String resolveDomainValue(final DomainResolver resolver, final String domain) {
+        String domainValue = resolver.getDomainValue(domain);
+        if (domainValue == null) {
+            domainValue = "";
+        }
+        if (domainValue.contains(DOMAIN_SEPARATOR)) {
+            throw new IllegalArgumentException("domainValues may not contain '" + DOMAIN_SEPARATOR + '\'');
+        }
+        return domainValue;
+    }
+
+    private void add(final String domainValue) {
+        if (length == values.length) {
+            values = Arrays.copyOf(values, length * 2);
+        }
+        values[length++] = domainValue;
+    }
+
+    /**
+     * Encode the resolved domain values with the given dictionary.
+     *
+     * @return the encoded domain values, valid up to length()
+     */
+    int[] encode(final DomainValueDictionary dictionary) {
+        if (encodedValues.length < length) {
+            encodedValues = new int[values.length];
+        }
+        for (int i = 0; i < length; i++) {
+            encodedValues[i] = dictionary.lookup(values[i]);
+        }
+        return encodedValues;
+    }
+
+    String[] values() {
+        return values;
+    }
+
+    int length() {
+        return length;
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Keeps all KeyValues on the heap in a concurrent map.
+ */
+final class HeapKeyValuesMap implements KeyValuesMap {
+
+    private final Map<String, KeyValues> keyValuesMap;
+
+    HeapKeyValuesMap(final int expectedSize) {
+        keyValuesMap = new ConcurrentHashMap<>(Math.max(16, expectedSize));
+    }
+
+    @Override
+    public KeyValues get(final String key) {
+        return keyValuesMap.get(key);
+    }
+
+    @Override
+    public KeyValues computeIfAbsent(final String key, final Function<String, KeyValues> create) {
+        return keyValuesMap.computeIfAbsent(key, create);
+    }
+
+    @Override
+    public void put(final String key, final KeyValues keyValues) {
+        keyValuesMap.put(key, keyValues);
+    }
+
+    @Override
+    public KeyValues remove(final String key) {
+        return keyValuesMap.remove(key);
+    }
+
+    @Override
+    public void changed(final KeyValues keyValues) {
+        // get returns the KeyValues kept, so the changes are kept already
+    }
+
+    @Override
+    public Collection<KeyValues> values() {
+        return keyValuesMap.values();
+    }
+
+    @Override
+    public int size() {
+        return keyValuesMap.size();
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * A single change for the bulk methods setAll and removeAll of KeyValueResolver: the value of a key for some domain values, optionally
+ * in a change set. The key is checked and trimmed once, when the entry is created. removeAll uses the key, change set and domain values
+ * only.
+ */
+public final class KeyValueEntry {
+
+    private final String key;
+    private final Object value;
+    private final String description;
+    private final String changeSet;
+    private final String[] domainValues;
+
+    public static KeyValueEntry withoutChangeSet(String key, Object value, String description, String... domainValues) {
+        return new KeyValueEntry(key, value, description, null, domainValues);
+    }
+
+    public static KeyValueEntry withChangeSet(String key, Object value, String description, String changeSet, String... domainValues) {
+        return new KeyValueEntry(key, value, description, changeSet, domainValues);
+    }
+
+    /**
+     * An entry to remove the value of a key for some domain values.
+     */
+    public static KeyValueEntry forRemoval(String key, String changeSet, String... domainValues) {
+        return new KeyValueEntry(key, null, null, changeSet, domainValues);
+    }
+
+    private KeyValueEntry(String key, Object value, String description, String changeSet, String[] domainValues) {
+        Ensure.notEmpty(key, "key");
+        Objects.requireNonNull(domainValues, "\"domainValues\" must not be null");
+        this.key = key.trim();
+        this.value = value;
+        this.description = description;
+        this.changeSet = changeSet;
+        this.domainValues = domainValues.clone();
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public Object getValue() {
+        return value;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getChangeSet() {
+        return changeSet;
+    }
+
+    public String[] getDomainValues() {
+        return domainValues.clone();
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof KeyValueEntry)) {
+            return false;
+        }
+        final KeyValueEntry that = (KeyValueEntry) o;
+        return key.equals(that.key) && Objects.equals(value, that.value) && Objects.equals(description, that.description)
+                && Objects.equals(changeSet, that.changeSet) && Arrays.equals(domainValues, that.domainValues);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = Objects.hash(key, value, description, changeSet);
+        result = 31 * result + Arrays.hashCode(domainValues);
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "KeyValueEntry{key=\"" + key + "\", value=\"" + value + '"' + (changeSet != null ? ", changeSet=\"" + changeSet + '"' : "")
+                + ", domainValues=" + Arrays.toString(domainValues) + '}';
+    }
+}
@@ -23,8 +23,10 @@ package com.nitrobox.keyvalueresolver;
 
 import java.io.PrintStream;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 public interface KeyValueResolver {
 
@@ -53,6 +55,154 @@ public interface KeyValueResolver {
 
     <T> T get(String key, String... domainValues);
 
+    /**
+     * Get an int value for a given key from KeyValueResolver. Integer values are stored unboxed, so no boxing happens on resolution.
+     *
+     * @param key          key to query
+     * @param defaultValue defaultValue is returned, when no value or null is found for the key
+     * @param resolver     resolver to determine domain values to use during resolution
+     * @return value retrieved from KeyValueResolver or defaultValue
+     * @throws ClassCastException when the value found is not an Integer
+     */
+    default int getIntOrDefault(String key, int defaultValue, DomainResolver resolver) {
+        final Integer value = get(key, resolver);
+        return value == null ? defaultValue : value;
+    }
+
+    default int getIntOrDefault(String key, int defaultValue, String... domainValues) {
+        return getIntOrDefault(key, defaultValue, resolverFor(domainValues));
+    }
+
+    /**
+     * Get an int value for a given key from KeyValueResolver. Same as calling getIntOrDefault(key, 0, resolver);
+     */
+    default int getInt(String key, DomainResolver resolver) {
+        return getIntOrDefault(key, 0, resolver);
+    }
+
+    default int getInt(String key, String... domainValues) {
+        return getIntOrDefault(key, 0, resolverFor(domainValues));
+    }
+
+    /**
+     * Get a long value for a given key from KeyValueResolver.
+     *
+     * @throws ClassCastException when the value found is not a Long
+     * @see #getIntOrDefault(String, int, DomainResolver)
+     */
+    default long getLongOrDefault(String key, long defaultValue, DomainResolver resolver) {
+        final Long value = get(key, resolver);
+        return value == null ? defaultValue : value;
+    }
+
+    default long getLongOrDefault(String key, long defaultValue, String... domainValues) {
+        return getLongOrDefault(key, defaultValue, resolverFor(domainValues));
+    }
+
+    /**
+     * Get a long value for a given key from KeyValueResolver. Same as calling getLongOrDefault(key, 0L, resolver);
+     */
+    default long getLong(String key, DomainResolver resolver) {
+        return getLongOrDefault(key, 0L, resolver);
+    }
+
+    default long getLong(String key, String... domainValues) {
+        return getLongOrDefault(key, 0L, resolverFor(domainValues));
+    }
+
+    /**
+     * Get a double value for a given key from KeyValueResolver.
+     *
+     * @throws ClassCastException when the value found is not a Double
+     * @see #getIntOrDefault(String, int, DomainResolver)
+     */
+    default double getDoubleOrDefault(String key, double defaultValue, DomainResolver resolver) {
+        final Double value = get(key, resolver);
+        return value == null ? defaultValue : value;
+    }
+
+    default double getDoubleOrDefault(String key, double defaultValue, String... domainValues) {
+        return getDoubleOrDefault(key, defaultValue, resolverFor(domainValues));
+    }
+
+    /**
+     * Get a double value for a given key from KeyValueResolver. Same as calling getDoubleOrDefault(key, 0.0, resolver);
+     */
+    default double getDouble(String key, DomainResolver resolver) {
+        return getDoubleOrDefault(key, 0.0, resolver);
+    }
+
+    default double getDouble(String key, String... domainValues) {
+        return getDoubleOrDefault(key, 0.0, resolverFor(domainValues));
+    }
+
+    /**
+     * Get a boolean value for a given key from KeyValueResolver.
+     *
+     * @throws ClassCastException when the value found is not a Boolean
+     * @see #getIntOrDefault(String, int, DomainResolver)
+     */
+    default boolean getBooleanOrDefault(String key, boolean defaultValue, DomainResolver resolver) {
+        final Boolean value = get(key, resolver);
+        return value == null ? defaultValue : value;
+    }
+
+    default boolean getBooleanOrDefault(String key, boolean defaultValue, String... domainValues) {
+        return getBooleanOrDefault(key, defaultValue, resolverFor(domainValues));
+    }
+
+    /**
+     * Get a boolean value for a given key from KeyValueResolver. Same as calling getBooleanOrDefault(key, false, resolver);
+     */
+    default boolean getBoolean(String key, DomainResolver resolver) {
+        return getBooleanOrDefault(key, false, resolver);
+    }
+
+    default boolean getBoolean(String key, String... domainValues) {
+        return getBooleanOrDefault(key, false, resolverFor(domainValues));
+    }
+
+    /**
+     * Get a value for a given key from KeyValueResolver without blocking the caller. A key not yet known is loaded from persistence
+     * asynchronously. The default implementation resolves the value synchronously.
+     *
+     * @param key      key to query
+     * @param resolver resolver to determine domain values to use during resolution
+     * @param <T>      type of the objects stored under the provided key
+     * @return a future completed with the object retrieved from KeyValueResolver or with null
+     */
+    default <T> CompletableFuture<T> getAsync(String key, DomainResolver resolver) {
+        try {
+            return CompletableFuture.completedFuture(get(key, resolver));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    default <T> CompletableFuture<T> getAsync(String key, String... domainValues) {
+        return getAsync(key, resolverFor(domainValues));
+    }
+
+    /**
+     * Get the values of several keys at once. The resolver is asked for its domain values only once and all keys not yet known are loaded
+     * from persistence together. The default implementation gets the keys one by one.
+     *
+     * @param keys     keys to query
+     * @param resolver resolver to determine domain values to use during resolution
+     * @param <T>      type of the objects stored under the provided keys
+     * @return a map from the queried keys to their values, keys without a value are not contained
+     */
+    default <T> Map<String, T> getAll(Collection<String> keys, DomainResolver resolver) {
+        final Map<String, T> result = new HashMap<>(keys.size() * 4 / 3 + 1);
+        for (String key : keys) {
+            final T value = get(key, resolver);
+            if (value != null) {
+                result.put(key, value);
+            }
+        }
+        return result;
+    }
+
     /**
      * Get a value for a given key from KeyValueResolver. When no value is found in KeyValueResolver, the provided default is stored in
      * KeyValueResolver. Same as calling getOfDefine(key, defaultValue, resolver, null);
@@ -89,10 +239,48 @@ public interface KeyValueResolver {
 
     DomainSpecificValue setWithChangeSet(String key, Object value, String description, String changeSet, DomainValues domainValues);
 
+    /**
+     * Set a value without blocking the caller. The value is visible in KeyValueResolver before it is stored, the returned future is
+     * completed, when it is stored in persistence. The default implementation sets the value synchronously.
+     */
+    default CompletableFuture<DomainSpecificValue> setAsync(String key, Object value, String description, String... domainValues) {
+        try {
+            return CompletableFuture.completedFuture(set(key, value, description, domainValues));
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Set many values at once, e.g. for an import. All values are set taking the locks once and stored with a single call to
+     * persistence. The default implementation sets the values one by one.
+     *
+     * @param entries the values to set
+     */
+    default void setAll(Collection<KeyValueEntry> entries) {
+        for (KeyValueEntry entry : entries) {
+            setWithChangeSet(entry.getKey(), entry.getValue(), entry.getDescription(), entry.getChangeSet(), entry.getDomainValues());
+        }
+    }
+
     void reload();
 
     void reload(String key);
 
+    /**
+     * Reload a key from persistence without blocking the caller. The default implementation reloads the key synchronously.
+     *
+     * @return a future completed, when the reloaded values are visible
+     */
+    default CompletableFuture<Void> reloadAsync(String key) {
+        try {
+            reload(key);
+            return CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
     StringBuilder dump();
 
     void dump(PrintStream out);
@@ -151,6 +339,18 @@ public interface KeyValueResolver {
 
     void removeAllMatching(String key, DomainValues domainValues);
 
+    /**
+     * Remove many domain specific values at once, each with exactly the domainValues and changeSet of its entry. Keys are also removed,
+     * when no domain specific values are left after the removal. The default implementation removes the values one by one.
+     *
+     * @param entries the values to remove, created with KeyValueEntry.forRemoval
+     */
+    default void removeAll(Collection<KeyValueEntry> entries) {
+        for (KeyValueEntry entry : entries) {
+            removeWithChangeSet(entry.getKey(), entry.getChangeSet(), entry.getDomainValues());
+        }
+    }
+
     /**
      * removes a complete key with all domain specific values.
      * @param key key to remove
@@ -24,14 +24,23 @@ package com.nitrobox.keyvalueresolver;
 import static java.lang.Math.min;
 
 import com.nitrobox.keyvalueresolver.jmx.KeyValueResolverManager;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
 import java.util.stream.Collector;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,12 +51,14 @@ import org.slf4j.LoggerFactory;
  * @author finsterwalder
  * @since 2013-03-25 08:07
  */
-public class KeyValueResolverImpl implements KeyValueResolver {
+public class KeyValueResolverImpl implements KeyValueResolver, AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(KeyValueResolverImpl.class);
     public static final String KEY_VALUE_RESOLVER_DOMAINS_TEXT = "KeyValueResolver{domains=";
     private final ValuesStore valuesStore = new ValuesStore();
     private final List<String> domains = new CopyOnWriteArrayList<>();
+    private volatile ResolvedValueCache resolvedValueCache;
+    private volatile MissingKeyCache missingKeyCache;
 
     public KeyValueResolverImpl(final Persistence persistence, DomainSpecificValueFactory domainSpecificValueFactory) {
         initFromPersistence(persistence, domainSpecificValueFactory);
@@ -76,7 +87,7 @@ public class KeyValueResolverImpl implements KeyValueResolver {
         Objects.requireNonNull(persistence, "\"persistence\" must not be null");
         valuesStore.setDomainSpecificValueFactory(domainSpecificValueFactory);
         valuesStore.setPersistence(persistence);
-        valuesStore.setAllValues(persistence.loadAll(domainSpecificValueFactory));
+        valuesStore.loadAll();
         KeyValueResolverManager.getInstance().add(this);
     }
 
@@ -107,13 +118,8 @@ public class KeyValueResolverImpl implements KeyValueResolver {
     @Override
     public <T> T getOrDefault(final String key, final T defaultValue, DomainResolver resolver) {
         final String trimmedKey = trimKey(key);
-        KeyValues keyValues = valuesStore.getKeyValuesFromMapOrPersistence(trimmedKey);
-        T result;
-        if (keyValues == null) {
-            result = defaultValue;
-        } else {
-            result = keyValues.get(domains, defaultValue, resolver);
-        }
+        final DomainSpecificValue domainSpecificValue = find(trimmedKey, resolver);
+        final T result = DomainSpecificValue.valueOrDefault(domainSpecificValue, defaultValue);
         if (LOGGER.isDebugEnabled()) {
             LOGGER.debug("Getting value for key: '{}' with given default: '{}'. Returning value: '{}'", trimmedKey, defaultValue, result);
             StringBuilder builder = new StringBuilder("DomainValues: ");
@@ -125,6 +131,217 @@ public class KeyValueResolverImpl implements KeyValueResolver {
         return result;
     }
 
+    private DomainSpecificValue find(final String trimmedKey, final DomainResolver resolver) {
+        return find(trimmedKey, valuesStore.getKeyValuesFromMapOrPersistence(trimmedKey), resolver);
+    }
+
+    private DomainSpecificValue find(final String trimmedKey, final KeyValues keyValues, final DomainResolver resolver) {
+        if (keyValues == null) {
+            return null;
+        }
+        final ResolvedValueCache cache = resolvedValueCache;
+        if (cache != null) {
+            return cache.find(trimmedKey, keyValues, domains, resolver);
+        }
+        return keyValues.find(domains, resolver);
+    }
+
+    /**
+     * Find the value for a typed getter, null when no value or a null value is found.
+     */
+    private DomainSpecificValue findTyped(final String key, final DomainResolver resolver) {
+        final String trimmedKey = trimKey(key);
+        final DomainSpecificValue domainSpecificValue = find(trimmedKey, resolver);
+        LOGGER.debug("Getting typed value for key: '{}'. Found: {}", trimmedKey, domainSpecificValue);
+        return domainSpecificValue == null || domainSpecificValue.getValue() == null ? null : domainSpecificValue;
+    }
+
+    @Override
+    public int getInt(final String key, final String... domainValues) {
+        return getIntOrDefault(key, 0, resolverFor(domainValues));
+    }
+
+    @Override
+    public int getInt(final String key, final DomainResolver resolver) {
+        return getIntOrDefault(key, 0, resolver);
+    }
+
+    @Override
+    public int getIntOrDefault(final String key, final int defaultValue, final String... domainValues) {
+        return getIntOrDefault(key, defaultValue, resolverFor(domainValues));
+    }
+
+    @Override
+    public int getIntOrDefault(final String key, final int defaultValue, final DomainResolver resolver) {
+        final DomainSpecificValue domainSpecificValue = findTyped(key, resolver);
+        return domainSpecificValue == null ? defaultValue : domainSpecificValue.getInt();
+    }
+
+    @Override
+    public long getLong(final String key, final String... domainValues) {
+        return getLongOrDefault(key, 0L, resolverFor(domainValues));
+    }
+
+    @Override
+    public long getLong(final String key, final DomainResolver resolver) {
+        return getLongOrDefault(key, 0L, resolver);
+    }
+
+    @Override
+    public long getLongOrDefault(final String key, final long defaultValue, final String... domainValues) {
+        return getLongOrDefault(key, defaultValue, resolverFor(domainValues));
+    }
+
+    @Override
+    public long getLongOrDefault(final String key, final long defaultValue, final DomainResolver resolver) {
+        final DomainSpecificValue domainSpecificValue = findTyped(key, resolver);
+        return domainSpecificValue == null ? defaultValue : domainSpecificValue.getLong();
+    }
+
+    @Override
+    public double getDouble(final String key, final String... domainValues) {
+        return getDoubleOrDefault(key, 0.0, resolverFor(domainValues));
+    }
+
+    @Override
+    public double getDouble(final String key, final DomainResolver resolver) {
+        return getDoubleOrDefault(key, 0.0, resolver);
+    }
+
+    @Override
+    public double getDoubleOrDefault(final String key, final double defaultValue, final String... domainValues) {
+        return getDoubleOrDefault(key, defaultValue, resolverFor(domainValues));
+    }
+
+    @Override
+    public double getDoubleOrDefault(final String key, final double defaultValue, final DomainResolver resolver) {
+        final DomainSpecificValue domainSpecificValue = findTyped(key, resolver);
+        return domainSpecificValue == null ? defaultValue : domainSpecificValue.getDouble();
+    }
+
+    @Override
+    public boolean getBoolean(final String key, final String... domainValues) {
+        return getBooleanOrDefault(key, false, resolverFor(domainValues));
+    }
+
+    @Override
+    public boolean getBoolean(final String key, final DomainResolver resolver) {
+        return getBooleanOrDefault(key, false, resolver);
+    }
+
+    @Override
+    public boolean getBooleanOrDefault(final String key, final boolean defaultValue, final String... domainValues) {
+        return getBooleanOrDefault(key, defaultValue, resolverFor(domainValues));
+    }
+
+    @Override
+    public boolean getBooleanOrDefault(final String key, final boolean defaultValue, final DomainResolver resolver) {
+        final DomainSpecificValue domainSpecificValue = findTyped(key, resolver);
+        return domainSpecificValue == null ? defaultValue : domainSpecificValue.getBoolean();
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getAsync(final String key, final DomainResolver resolver) {
+        final String trimmedKey = trimKey(key);
+        return valuesStore.getKeyValuesFromMapOrPersistenceAsync(trimmedKey).thenApply(keyValues -> {
+            final DomainSpecificValue domainSpecificValue = find(trimmedKey, keyValues, resolver);
+            final T result = DomainSpecificValue.valueOrDefault(domainSpecificValue, null);
+            LOGGER.debug("Got value for key: '{}' asynchronously. Returning value: '{}'", trimmedKey, result);
+            return result;
+        });
+    }
+
+    @Override
+    public <T> CompletableFuture<T> getAsync(final String key, final String... domainValues) {
+        return getAsync(key, resolverFor(domainValues));
+    }
+
+    /**
+     * Resolve the domain values and active change sets of a resolver once, to get the values of many keys for the same resolver. The
+     * resolver is not called again, when the context is used.
+     *
+     * @param resolver resolver to determine domain values to use during resolution
+     * @return an immutable context to pass to get or getOrDefault
+     */
+    public ResolutionContext prepare(final DomainResolver resolver) {
+        return valuesStore.prepare(domains, resolver);
+    }
+
+    /**
+     * Get a value for a given key from KeyValueResolver with the domain values of a prepared context. Same as calling getOrDefault(key,
+     * null, context);
+     */
+    public <T> T get(final String key, final ResolutionContext context) {
+        return getOrDefault(key, null, context);
+    }
+
+    /**
+     * Get a value for a given key from KeyValueResolver with the domain values of a prepared context.
+     *
+     * @param key          key to query
+     * @param defaultValue defaultValue is returned, when no value for the key is found
+     * @param context      context created by prepare
+     * @param <T>          type of the objects stored under the provided key
+     * @return object retrieved from KeyValueResolver or defaultValue
+     */
+    public <T> T getOrDefault(final String key, final T defaultValue, final ResolutionContext context) {
+        checkContext(context);
+        final String trimmedKey = trimKey(key);
+        final T result = get(trimmedKey, valuesStore.getKeyValuesFromMapOrPersistence(trimmedKey), defaultValue, context);
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Getting value for key: '{}' with given default: '{}' and {}. Returning value: '{}'", trimmedKey, defaultValue,
+                    context, result);
+        }
+        return result;
+    }
+
+    private <T> T get(final String trimmedKey, final KeyValues keyValues, final T defaultValue, final ResolutionContext context) {
+        if (keyValues == null) {
+            return defaultValue;
+        }
+        final ResolvedValueCache cache = resolvedValueCache;
+        if (cache != null) {
+            return cache.get(trimmedKey, keyValues, context, defaultValue);
+        }
+        return keyValues.get(context, defaultValue);
+    }
+
+    private void checkContext(final ResolutionContext context) {
+        Objects.requireNonNull(context, "\"context\" must not be null");
+        if (context.getLength() != domains.size()) {
+            throw new IllegalArgumentException("The context was prepared for different domains, prepare a new one");
+        }
+    }
+
+    @Override
+    public <T> Map<String, T> getAll(final Collection<String> keys, final DomainResolver resolver) {
+        return getAll(keys, prepare(resolver));
+    }
+
+    /**
+     * Get the values of several keys at once with the domain values of a prepared context.
+     *
+     * @see #getAll(Collection, DomainResolver)
+     */
+    public <T> Map<String, T> getAll(final Collection<String> keys, final ResolutionContext context) {
+        Objects.requireNonNull(keys, "\"keys\" must not be null");
+        checkContext(context);
+        final Map<String, String> trimmedKeys = new HashMap<>();
+        for (String key : keys) {
+            trimmedKeys.put(key, trimKey(key));
+        }
+        final Map<String, KeyValues> keyValuesMap = valuesStore.getKeyValuesFromMapOrPersistence(trimmedKeys.values());
+        final Map<String, T> result = new HashMap<>();
+        for (Map.Entry<String, String> key : trimmedKeys.entrySet()) {
+            final T value = get(key.getValue(), keyValuesMap.get(key.getValue()), null, context);
+            if (value != null) {
+                result.put(key.getKey(), value);
+            }
+        }
+        LOGGER.debug("Getting values for {} keys with {}. Found {} values", trimmedKeys.size(), context, result.size());
+        return result;
+    }
+
     private static String trimKey(final String key) {
         Ensure.notEmpty(key, "key");
         return key.trim();
@@ -200,6 +417,21 @@ public class KeyValueResolverImpl implements KeyValueResolver {
         return this.setWithChangeSet(key, value, description, changeSet, domainValuesArray);
     }
 
+    @Override
+    public CompletableFuture<DomainSpecificValue> setAsync(final String key, final Object value, final String description,
+            final String... domainValues) {
+        final String trimmedKey = trimKey(key);
+        LOGGER.debug("Storing value: '{}' for key: '{}' asynchronously with given domains: '{}'.", value, trimmedKey, domainValues);
+        return valuesStore.setWithChangeSetAsync(trimmedKey, description, null, value, domainValues);
+    }
+
+    @Override
+    public void setAll(final Collection<KeyValueEntry> entries) {
+        Objects.requireNonNull(entries, "\"entries\" must not be null");
+        LOGGER.debug("Storing {} values.", entries.size());
+        valuesStore.setAll(entries);
+    }
+
     public void setPersistence(final Persistence persistence) {
         Objects.requireNonNull(persistence, "\"persistence\" must not be null");
         valuesStore.setPersistence(persistence);
@@ -216,6 +448,26 @@ public class KeyValueResolverImpl implements KeyValueResolver {
         valuesStore.reload(trimKey(key));
     }
 
+    @Override
+    public CompletableFuture<Void> reloadAsync(String key) {
+        return valuesStore.reloadAsync(trimKey(key));
+    }
+
+    /**
+     * Tell a listener about every value added, changed or removed from now on, by sets, removes and reloads. The listener is called
+     * asynchronously with batches of events, in the order the changes were made, and never by two threads at a time.
+     *
+     * @param listener the listener to add
+     */
+    public void addChangeListener(final ChangeListener listener) {
+        Objects.requireNonNull(listener, "\"listener\" must not be null");
+        valuesStore.addChangeListener(listener);
+    }
+
+    public void removeChangeListener(final ChangeListener listener) {
+        valuesStore.removeChangeListener(listener);
+    }
+
     @Override
     public String toString() {
         return KEY_VALUE_RESOLVER_DOMAINS_TEXT + domains + '}';
@@ -237,6 +489,81 @@ public class KeyValueResolverImpl implements KeyValueResolver {
         out.println("\n}");
     }
 
+    /**
+     * Write all values to a snapshot file, to start KeyValueResolvers from it with loadSnapshot. The file is replaced atomically, so
+     * readers never see a partly written snapshot.
+     */
+    public void writeSnapshot(final Path file, final ValueCodec valueCodec) throws IOException {
+        Objects.requireNonNull(valueCodec, "\"valueCodec\" must not be null");
+        replaceAtomically(file, tempFile -> {
+            try (OutputStream out = Files.newOutputStream(tempFile)) {
+                valuesStore.writeSnapshot(out, valueCodec);
+            }
+        });
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Wrote snapshot of {} keys to {}", valuesStore.getAllValues().size(), file);
+        }
+    }
+
+    /**
+     * Write all values to a file, to keep them off the heap of KeyValueResolvers mapping it with loadMapped. The file is replaced
+     * atomically, so KeyValueResolvers that mapped the old file keep reading it.
+     */
+    public void writeMapped(final Path file, final ValueCodec valueCodec) throws IOException {
+        Objects.requireNonNull(valueCodec, "\"valueCodec\" must not be null");
+        replaceAtomically(file, tempFile -> valuesStore.writeMapped(tempFile, valueCodec));
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Wrote mapped file of {} keys to {}", valuesStore.getAllValues().size(), file);
+        }
+    }
+
+    private static void replaceAtomically(final Path file, final FileWriter writer) throws IOException {
+        final Path directory = file.toAbsolutePath().getParent();
+        final Path tempFile = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+        try {
+            writer.write(tempFile);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tempFile);
+        }
+    }
+
+    private interface FileWriter {
+
+        void write(Path file) throws IOException;
+    }
+
+    /**
+     * Replace all values with the values of a snapshot file, without loading them from persistence. To start from a snapshot, create a
+     * KeyValueResolverImpl without persistence, load the snapshot, then set the persistence and call reload to catch up with the changes
+     * made since the snapshot was written. A DeltaPersistence only gives those changes, when the snapshot was written by a
+     * KeyValueResolver using the same DeltaPersistence, otherwise reload reloads all values.
+     */
+    public void loadSnapshot(final Path file, final ValueCodec valueCodec) throws IOException {
+        Objects.requireNonNull(valueCodec, "\"valueCodec\" must not be null");
+        try (InputStream in = Files.newInputStream(file)) {
+            valuesStore.readSnapshot(in, valueCodec);
+        }
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Loaded snapshot of {} keys from {}", valuesStore.getAllValues().size(), file);
+        }
+    }
+
+    /**
+     * Replace all values with the values of a file written by writeMapped, mapping it into memory instead of reading it onto the heap.
+     * The values are decoded from the file on every access, only values changed afterwards are kept on the heap. As KeyValues returned
+     * by getKeyValues may be decoded for the call only, change values through this KeyValueResolver. A ResolvedValueCache does not help
+     * with values read from the file, as they are decoded anew every time.
+     * <p>
+     * reload() brings all values onto the heap again, reload(key) only the reloaded key. With a DeltaPersistence, reload() only brings the
+     * keys changed since the file was written onto the heap, when the file was written by a KeyValueResolver using the same persistence.
+     */
+    public void loadMapped(final Path file, final ValueCodec valueCodec) throws IOException {
+        Objects.requireNonNull(valueCodec, "\"valueCodec\" must not be null");
+        valuesStore.openMapped(file, valueCodec);
+        LOGGER.debug("Mapped values from {}", file);
+    }
+
     @Override
     public KeyValues getKeyValues(final String key) {
         return valuesStore.getValuesFor(trimKey(key));
@@ -252,6 +579,82 @@ public class KeyValueResolverImpl implements KeyValueResolver {
         valuesStore.setDomainSpecificValueFactory(domainSpecificValueFactory);
     }
 
+    /**
+     * Use a cache for resolved values in getOrDefault and the methods based on it. Pass null to disable caching again.
+     *
+     * @param resolvedValueCache the cache to use, keep a reference to it to access its statistics
+     */
+    public void setResolvedValueCache(final ResolvedValueCache resolvedValueCache) {
+        this.resolvedValueCache = resolvedValueCache;
+        valuesStore.setResolvedValueCache(resolvedValueCache);
+    }
+
+    public ResolvedValueCache getResolvedValueCache() {
+        return resolvedValueCache;
+    }
+
+    /**
+     * Remember keys that persistence has no values for, so they are not loaded again on every query. Pass null to disable it again.
+     *
+     * @param missingKeyCache the cache to use, keep a reference to it to access its statistics
+     */
+    public void setMissingKeyCache(final MissingKeyCache missingKeyCache) {
+        this.missingKeyCache = missingKeyCache;
+        valuesStore.setMissingKeyCache(missingKeyCache);
+    }
+
+    public MissingKeyCache getMissingKeyCache() {
+        return missingKeyCache;
+    }
+
+    /**
+     * Set the persistence used by getAsync, setAsync and reloadAsync, for example an {@link AsyncPersistenceAdapter} with an executor of
+     * its own. Without one, these methods run the calls of the persistence on the async executor.
+     */
+    public void setAsyncPersistence(final AsyncPersistence asyncPersistence) {
+        valuesStore.setAsyncPersistence(asyncPersistence);
+    }
+
+    /**
+     * Set the executor setAsync and reloadAsync change values on, so their callers never wait for a lock.
+     *
+     * @see ValuesStore#setAsyncExecutor(Executor)
+     */
+    public void setAsyncExecutor(final Executor executor) {
+        valuesStore.setAsyncExecutor(executor);
+    }
+
+    /**
+     * Shut down the threads created for the async methods.
+     */
+    @Override
+    public void close() {
+        valuesStore.close();
+    }
+
+    /**
+     * Set the executor ChangeListeners are called on, the common fork join pool by default.
+     */
+    public void setChangeListenerExecutor(final Executor executor) {
+        valuesStore.setChangeListenerExecutor(executor);
+    }
+
+    /**
+     * Load keys missed by concurrent callers from persistence together, instead of one by one.
+     *
+     * @see ValuesStore#setLoadBatching(Duration, int)
+     */
+    public void setLoadBatching(final Duration window, final int maxBatchSize) {
+        valuesStore.setLoadBatching(window, maxBatchSize);
+    }
+
+    /**
+     * @return the lock of the store, to look at its acquisition and contention counts
+     */
+    public ReadWriteLockTool getValuesStoreLock() {
+        return valuesStore.getLock();
+    }
+
     @Override
     public Collection<KeyValues> getAllKeyValues() {
         return valuesStore.getAllValues();
@@ -274,10 +677,11 @@ public class KeyValueResolverImpl implements KeyValueResolver {
 
     @Override
     public <T> Map<String, T> getAllMappings(DomainResolver resolver) {
+        final ResolutionContext context = prepare(resolver);
         return getAllKeyValues().stream()
                 .collect(Collector.of(HashMap::new,
                         (result, kv) -> {
-                            final T s = kv.get(domains, null, resolver);
+                            final T s = kv.get(context, null);
                             if (s != null) {
                                 result.put(kv.getKey(), s);
                             }
@@ -324,6 +728,13 @@ public class KeyValueResolverImpl implements KeyValueResolver {
     }
 
 
+    @Override
+    public void removeAll(final Collection<KeyValueEntry> entries) {
+        Objects.requireNonNull(entries, "\"entries\" must not be null");
+        LOGGER.debug("Removing {} values.", entries.size());
+        valuesStore.removeAll(entries);
+    }
+
     @Override
     public void removeKey(final String key) {
         valuesStore.remove(trimKey(key));
@@ -21,22 +21,29 @@
 
 package com.nitrobox.keyvalueresolver;
 
+import java.util.AbstractSet;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
 
 
 /**
  * A collection of domain specifically overridden values for a single key. The different DomainSpecificValues are queried according to their
  * ordering and changeSet.
+ * <p>
+ * The values are kept in an immutable array sorted by precedence. Changes copy the array and publish the copy, so reads never lock and
+ * iterate a plain array. Changes of a single KeyValues are serialized.
  *
  * @author finsterwalder
  * @see DomainSpecificValue
@@ -45,9 +52,19 @@ import java.util.concurrent.ConcurrentSkipListSet;
 public class KeyValues {
 
     private static final String DOMAIN_SEPARATOR = "|";
+    /**
+     * Minimum number of DomainSpecificValues for a key, before resolution uses a KeyValuesIndex instead of checking every value.
+     */
+    static final int INDEX_THRESHOLD = 32;
+    private static final long ALL_CHANGE_SETS = -1L;
+    private static final DomainSpecificValue[] NO_VALUES = new DomainSpecificValue[0];
     private final String key;
     private String description;
-    private final Set<DomainSpecificValue> domainSpecificValues = new ConcurrentSkipListSet<>();
+    private volatile DomainSpecificValue[] domainSpecificValues = NO_VALUES; // sorted, never modified after publication
+    private final AtomicInteger version = new AtomicInteger();
+    private volatile KeyValuesIndex index;
+    private volatile DomainValueDictionary domainValueDictionary;
+    private volatile ChangeSetRegistry changeSetRegistry;
     private DomainSpecificValueFactory domainSpecificValueFactory;
 
     public KeyValues(String key, final DomainSpecificValueFactory domainSpecificValueFactory) {
@@ -64,7 +81,7 @@ public class KeyValues {
             List<DomainSpecificValue> domainSpecificValues) {
         this(key, domainSpecificValueFactory, description);
         if (domainSpecificValues != null) {
-            this.domainSpecificValues.addAll(domainSpecificValues);
+            this.domainSpecificValues = sorted(domainSpecificValues);
         }
     }
 
@@ -81,56 +98,228 @@ public class KeyValues {
     }
 
     public DomainSpecificValue putWithChangeSet(final String changeSet, final Object value, final String... domainValues) {
+        return putWithChangeSet(changeSet, value, domainValues, null);
+    }
+
+    /**
+     * @param events list to add the ChangeEvent of the put to or null
+     */
+    /*package*/ DomainSpecificValue putWithChangeSet(final String changeSet, final Object value, final String[] domainValues,
+            final List<ChangeEvent> events) {
         Objects.requireNonNull(domainValues, "Domain key parts may no be null");
         for (int i = 0; i < domainValues.length; i++) {
             if (domainValues[i] == null || domainValues[i].trim().length() == 0) {
                 domainValues[i] = "*";
             }
         }
-        return addOrChangeDomainSpecificValue(changeSet, value, domainValues);
+        return put(domainSpecificValueFactory.create(value, changeSet, domainValues), events);
     }
 
-    private DomainSpecificValue addOrChangeDomainSpecificValue(final String changeSet, final Object value, final String... domainValues) {
-        DomainSpecificValue domainSpecificValue = domainSpecificValueFactory.create(value, changeSet, domainValues);
-        if (domainSpecificValues.contains(domainSpecificValue)) {
-            domainSpecificValues.stream()
-                    .filter(dsv -> dsv.compareTo(domainSpecificValue) == 0)
-                    .forEach(dsv -> dsv.setValue(domainSpecificValue.getValue()));
-        } else {
-            domainSpecificValues.add(domainSpecificValue);
+    /**
+     * Add a DomainSpecificValue or change the value of the DomainSpecificValue with the same pattern and change set.
+     *
+     * @param events list to add the ChangeEvent of the put to or null
+     */
+    /*package*/ DomainSpecificValue put(final DomainSpecificValue domainSpecificValue, final List<ChangeEvent> events) {
+        synchronized (this) {
+            final DomainSpecificValue[] values = domainSpecificValues;
+            final int position = Arrays.binarySearch(values, domainSpecificValue);
+            if (position >= 0) {
+                final Object oldValue = values[position].getValue();
+                if (events != null && !Objects.equals(oldValue, domainSpecificValue.getValue())) {
+                    events.add(ChangeEvent.changed(key, values[position], oldValue, domainSpecificValue.getValue()));
+                }
+                values[position].setValue(domainSpecificValue.getValue());
+            } else {
+                if (events != null) {
+                    events.add(ChangeEvent.added(key, domainSpecificValue));
+                }
+                final int insertAt = -position - 1;
+                final DomainSpecificValue[] newValues = new DomainSpecificValue[values.length + 1];
+                System.arraycopy(values, 0, newValues, 0, insertAt);
+                newValues[insertAt] = domainSpecificValue;
+                System.arraycopy(values, insertAt, newValues, insertAt + 1, values.length - insertAt);
+                domainSpecificValues = newValues;
+            }
+            version.incrementAndGet();
         }
         return domainSpecificValue;
     }
 
+    /**
+     * @return the values sorted by precedence, of values comparing equal only the first one is kept, like adding them to a sorted set would
+     */
+    private static DomainSpecificValue[] sorted(final Collection<DomainSpecificValue> values) {
+        final DomainSpecificValue[] result = values.toArray(NO_VALUES);
+        Arrays.sort(result);
+        int count = 0;
+        for (int i = 0; i < result.length; i++) {
+            if (count > 0 && result[count - 1].compareTo(result[i]) == 0) {
+                continue;
+            }
+            result[count++] = result[i];
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
     public <T> T get(Iterable<String> domains, T defaultValue, final DomainResolver resolver) {
+        final DomainSpecificValue domainSpecificValue = find(domains, resolver);
+        return DomainSpecificValue.valueOrDefault(domainSpecificValue, defaultValue);
+    }
+
+    /**
+     * Find the DomainSpecificValue with the highest precedence for the domain values of a resolver.
+     *
+     * @return the DomainSpecificValue or null, when no value matches
+     */
+    /*package*/ DomainSpecificValue find(Iterable<String> domains, final DomainResolver resolver) {
         Objects.requireNonNull(domains, "\"domains\" must not be null");
-        Iterator<String> domainsIterator = domains.iterator();
-        if (domainsIterator.hasNext() && resolver == null) {
+        if (resolver == null && !isEmpty(domains)) {
             throw new IllegalArgumentException("If a domain is specified, the domain resolver must not be null");
         }
-        String domainStr = buildDomain(domains, resolver);
-        for (DomainSpecificValue domainSpecificValue : domainSpecificValues) {
-            if ((resolver == null || domainSpecificValue.isInChangeSets(resolver.getActiveChangeSets()))
-                    && domainSpecificValue.patternMatches(domainStr)) {
-                return (T) domainSpecificValue.getValue();
+        final DomainValuesBuffer buffer = DomainValuesBuffer.acquire();
+        try {
+            if (resolver != null) {
+                buffer.resolve(domains, resolver);
+            }
+            final KeyValuesIndex currentIndex = getIndex();
+            if (currentIndex.isEmpty()) {
+                return null;
             }
+            final Collection<String> activeChangeSets = resolver == null ? null : activeChangeSets(resolver);
+            return find(currentIndex, buffer, resolver, activeChangeSets);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    /**
+     * Get the value for the domain values and active change sets of a prepared context.
+     */
+    /*package*/ <T> T get(final ResolutionContext context, final T defaultValue) {
+        final DomainSpecificValue domainSpecificValue = find(context);
+        return DomainSpecificValue.valueOrDefault(domainSpecificValue, defaultValue);
+    }
+
+    /*package*/ DomainSpecificValue find(final ResolutionContext context) {
+        final KeyValuesIndex currentIndex = getIndex();
+        if (currentIndex.isEmpty()) {
+            return null;
+        }
+        final int[] encodedDomainValues = context.getEncodedDomainValues(currentIndex.getDictionary());
+        final long activeChangeSetMask = context.getActiveChangeSetMask(currentIndex.getChangeSetRegistry());
+        return currentIndex.find(context.getDomainValues(), encodedDomainValues, context.getLength(), activeChangeSetMask,
+                context.getActiveChangeSets());
+    }
+
+    /**
+     * Find the DomainSpecificValue with the highest precedence for already resolved domain values.
+     *
+     * @param resolver         the resolver the domain values and active change sets were taken from
+     * @param activeChangeSets the active change sets or null to consider all change sets active
+     */
+    /*package*/ DomainSpecificValue find(final DomainValuesBuffer buffer, final DomainResolver resolver,
+            final Collection<String> activeChangeSets) {
+        return find(getIndex(), buffer, resolver, activeChangeSets);
+    }
+
+    private static DomainSpecificValue find(final KeyValuesIndex index, final DomainValuesBuffer buffer, final DomainResolver resolver,
+            final Collection<String> activeChangeSets) {
+        final int[] encodedDomainValues = buffer.encode(index.getDictionary());
+        if (activeChangeSets == null) {
+            return index.find(buffer.values(), encodedDomainValues, buffer.length(), ALL_CHANGE_SETS, null);
         }
-        return defaultValue;
+        final long activeChangeSetMask = index.getChangeSetRegistry().maskOf(resolver, activeChangeSets);
+        return index.find(buffer.values(), encodedDomainValues, buffer.length(), activeChangeSetMask, activeChangeSets);
     }
 
-    private static String buildDomain(final Iterable<String> domains, final DomainResolver resolver) {
-        StringBuilder builder = new StringBuilder();
-        for (String domain : domains) {
-            String domainValue = resolver.getDomainValue(domain);
-            if (domainValue == null) {
-                domainValue = "";
+    /*package*/ static Collection<String> activeChangeSets(final DomainResolver resolver) {
+        final Collection<String> activeChangeSets = resolver.getActiveChangeSets();
+        return activeChangeSets == null ? Collections.emptyList() : activeChangeSets;
+    }
+
+    private static boolean isEmpty(final Iterable<String> domains) {
+        if (domains instanceof Collection) {
+            return ((Collection<String>) domains).isEmpty();
+        }
+        return !domains.iterator().hasNext();
+    }
+
+    /**
+     * Build the index for the current DomainSpecificValues now, instead of on the first resolution, e.g. on the threads loading the
+     * values.
+     */
+    /*package*/ void buildIndex() {
+        getIndex();
+    }
+
+    /**
+     * Get the index for the current DomainSpecificValues. The index is built lazily on first access after a change. Only keys with many
+     * values get a trie, the values of other keys are checked one by one.
+     */
+    private KeyValuesIndex getIndex() {
+        final int currentVersion = version.get();
+        KeyValuesIndex currentIndex = index;
+        if (currentIndex == null || currentIndex.getVersion() != currentVersion) {
+            currentIndex = new KeyValuesIndex(domainSpecificValues, currentVersion, INDEX_THRESHOLD, getDomainValueDictionary(),
+                    getChangeSetRegistry());
+            index = currentIndex;
+        }
+        return currentIndex;
+    }
+
+    /*package*/ int getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Use the dictionary shared by all KeyValues of a ValuesStore to encode patterns. KeyValues not belonging to a ValuesStore use their
+     * own dictionary.
+     */
+    /*package*/ void setDomainValueDictionary(final DomainValueDictionary domainValueDictionary) {
+        if (this.domainValueDictionary != domainValueDictionary) {
+            this.domainValueDictionary = domainValueDictionary;
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Use the change set registry shared by all KeyValues of a ValuesStore. KeyValues not belonging to a ValuesStore use their own
+     * registry.
+     */
+    /*package*/ void setChangeSetRegistry(final ChangeSetRegistry changeSetRegistry) {
+        if (this.changeSetRegistry != changeSetRegistry) {
+            this.changeSetRegistry = changeSetRegistry;
+            version.incrementAndGet();
+        }
+    }
+
+    private ChangeSetRegistry getChangeSetRegistry() {
+        ChangeSetRegistry result = changeSetRegistry;
+        if (result == null) {
+            synchronized (this) {
+                result = changeSetRegistry;
+                if (result == null) {
+                    result = new ChangeSetRegistry();
+                    changeSetRegistry = result;
+                }
             }
-            if (domainValue.contains(DOMAIN_SEPARATOR)) {
-                throw new IllegalArgumentException("domainValues may not contain '" + DOMAIN_SEPARATOR + '\'');
+        }
+        return result;
+    }
+
+    /*package*/ DomainValueDictionary getDomainValueDictionary() {
+        DomainValueDictionary result = domainValueDictionary;
+        if (result == null) {
+            synchronized (this) {
+                result = domainValueDictionary;
+                if (result == null) {
+                    result = new DomainValueDictionary();
+                    domainValueDictionary = result;
+                }
             }
-            builder.append(domainValue).append(DOMAIN_SEPARATOR);
         }
-        return builder.toString();
+        return result;
     }
 
     public String getDescription() {
@@ -152,8 +341,11 @@ public class KeyValues {
         return builder.toString();
     }
 
+    /**
+     * @return an unmodifiable snapshot of the current values in order of precedence
+     */
     public Set<DomainSpecificValue> getDomainSpecificValues() {
-        return Collections.unmodifiableSet(domainSpecificValues);
+        return new ValuesView(domainSpecificValues);
     }
 
     public void setDomainSpecificValueFactory(final DomainSpecificValueFactory domainSpecificValueFactory) {
@@ -165,29 +357,59 @@ public class KeyValues {
         for (String domainValue : domainValues) {
             builder.append(domainValue).append(DOMAIN_SEPARATOR);
         }
-        final String pattern = builder.toString();
-
-        Iterator<DomainSpecificValue> iterator = domainSpecificValues.iterator();
-        while (iterator.hasNext()) {
-            DomainSpecificValue value = iterator.next();
-            if (value.changeSetIs(changeSet) && pattern.equals(value.getPattern())) {
-                iterator.remove();
-                return value;
+        return remove(changeSet, builder.toString());
+    }
+
+    /**
+     * Remove the DomainSpecificValue with the same pattern and change set.
+     */
+    /*package*/ DomainSpecificValue remove(final DomainSpecificValue domainSpecificValue) {
+        return remove(domainSpecificValue.getChangeSet(), domainSpecificValue.getPattern());
+    }
+
+    private DomainSpecificValue remove(final String changeSet, final String pattern) {
+        synchronized (this) {
+            final DomainSpecificValue[] values = domainSpecificValues;
+            for (int i = 0; i < values.length; i++) {
+                final DomainSpecificValue value = values[i];
+                if (value.changeSetIs(changeSet) && pattern.equals(value.getPattern())) {
+                    final DomainSpecificValue[] newValues = new DomainSpecificValue[values.length - 1];
+                    System.arraycopy(values, 0, newValues, 0, i);
+                    System.arraycopy(values, i + 1, newValues, i, newValues.length - i);
+                    domainSpecificValues = newValues;
+                    version.incrementAndGet();
+                    return value;
+                }
             }
         }
         return null;
     }
 
     public Collection<DomainSpecificValue> removeChangeSet(final String changeSet) {
-        Collection<DomainSpecificValue> removedValues = new ArrayList<>(domainSpecificValues.size());
-        Iterator<DomainSpecificValue> iterator = domainSpecificValues.iterator();
-        while (iterator.hasNext()) {
-            DomainSpecificValue value = iterator.next();
-            if (value.changeSetIs(changeSet)) {
+        return removeIf(value -> value.changeSetIs(changeSet));
+    }
+
+    /**
+     * Remove all values matching a filter.
+     *
+     * @return the removed values
+     */
+    private synchronized Collection<DomainSpecificValue> removeIf(final Predicate<DomainSpecificValue> filter) {
+        final DomainSpecificValue[] values = domainSpecificValues;
+        final Collection<DomainSpecificValue> removedValues = new ArrayList<>();
+        final DomainSpecificValue[] remainingValues = new DomainSpecificValue[values.length];
+        int count = 0;
+        for (DomainSpecificValue value : values) {
+            if (filter.test(value)) {
                 removedValues.add(value);
-                iterator.remove();
+            } else {
+                remainingValues[count++] = value;
             }
         }
+        if (!removedValues.isEmpty()) {
+            domainSpecificValues = Arrays.copyOf(remainingValues, count);
+            version.incrementAndGet();
+        }
         return removedValues;
     }
 
@@ -197,18 +419,29 @@ public class KeyValues {
 
     public KeyValues copy(List<String> domains, DomainResolver... resolvers) {
         KeyValues result = new KeyValues(key, domainSpecificValueFactory, description);
+        result.domainValueDictionary = domainValueDictionary;
+        result.changeSetRegistry = changeSetRegistry;
+        final List<DomainSpecificValue> values = new ArrayList<>();
         for (DomainResolver resolver : resolvers) {
-            result.domainSpecificValues.addAll(findMatchingValues(domains, resolver));
+            values.addAll(findMatchingValues(domains, resolver));
         }
+        result.domainSpecificValues = sorted(values);
         return result;
     }
 
     private Collection<DomainSpecificValue> findMatchingValues(List<String> domains, DomainResolver resolver) {
-        Matcher matcher = buildMatcher(domains, true, resolver);
+        // encode all patterns first, so the dictionary knows all domain values the filters may ask for
+        final DomainValueDictionary dictionary = getDomainValueDictionary();
+        final Map<DomainSpecificValue, int[]> encodedPatterns = new IdentityHashMap<>();
+        for (DomainSpecificValue domainSpecificValue : domainSpecificValues) {
+            encodedPatterns.put(domainSpecificValue, dictionary.encodePattern(domainSpecificValue.getPattern()));
+        }
+        final Collection<String> activeChangeSets = activeChangeSets(resolver);
+        final PatternFilter filter = new PatternFilter(domains, true, resolver, dictionary);
 
         final Map<String, DomainSpecificValue> dvPatternMap = new HashMap<>();
-        domainSpecificValues.stream()
-                .filter(val -> val.patternMatches(matcher, resolver))
+        encodedPatterns.keySet().stream()
+                .filter(val -> val.isInChangeSets(activeChangeSets) && filter.matches(encodedPatterns.get(val)))
                 .forEach(newDomainValue -> dvPatternMap.compute(newDomainValue.getPattern(), (k, existingDomainValue) -> {
                     if (existingDomainValue == null) {
                         return newDomainValue;
@@ -240,8 +473,8 @@ public class KeyValues {
         Collection<DomainSpecificValue> result;
         do {
             MapBackedDomainResolver newResolver = getSubResolver(domains, resolver, index);
-            Matcher matcherNoWildcard = buildMatcher(domains, false, newResolver);
-            result = getDomainSpecificValue(resolver, values, matcherNoWildcard);
+            PatternFilter filterNoWildcard = new PatternFilter(domains, false, newResolver, dictionary);
+            result = getDomainSpecificValue(values, filterNoWildcard, encodedPatterns);
             index++;
         } while (result.isEmpty() && index <= domains.size());
         return result;
@@ -256,49 +489,118 @@ public class KeyValues {
         return newResolver;
     }
 
-    private Collection<DomainSpecificValue> getDomainSpecificValue(DomainResolver resolver, Collection<DomainSpecificValue> values,
-            Matcher matcherNoWildcard) {
+    private Collection<DomainSpecificValue> getDomainSpecificValue(Collection<DomainSpecificValue> values, PatternFilter filterNoWildcard,
+            Map<DomainSpecificValue, int[]> encodedPatterns) {
         Collection<DomainSpecificValue> result = new HashSet<>();
         for (DomainSpecificValue domainSpecificValue : values) {
-            if (domainSpecificValue.patternMatches(matcherNoWildcard, resolver)) {
+            if (filterNoWildcard.matches(encodedPatterns.get(domainSpecificValue))) {
                 result.add(domainSpecificValue);
             }
         }
         return result;
     }
 
-    private static RegexMatcher buildMatcher(final Iterable<String> domains, final boolean withWildcards, final DomainResolver resolver) {
-        StringBuilder builder = new StringBuilder();
-        for (String domain : domains) {
-            String domainValue = resolver.getDomainValue(domain);
-            if (domainValue == null) {
-                domainValue = "[^|]*";
-            } else if (domainValue.equals("*")) {
-                domainValue = "\\*";
-            } else if (domainValue.contains(DOMAIN_SEPARATOR)) {
-                domainValue = "(" + domainValue.replace("*", "\\*") + ")";
-            } else if (withWildcards) {
-                domainValue = "(" + domainValue + "|\\*)";
+    public synchronized Collection<DomainSpecificValue> removeAll(List<String> domains, DomainResolver resolver) {
+        final Collection<DomainSpecificValue> matchingValues = findMatchingValues(domains, resolver);
+        final Set<DomainSpecificValue> valuesToRemove = Collections.newSetFromMap(new IdentityHashMap<>());
+        valuesToRemove.addAll(matchingValues);
+        removeIf(valuesToRemove::contains);
+        return matchingValues;
+    }
+
+    public boolean isEmpty() {
+        return domainSpecificValues.length == 0;
+    }
+
+    /**
+     * Selects the DomainSpecificValues for a (partially) specified domain by their encoded patterns. The domain value of every domain
+     * restricts the allowed pattern segment at its position: a null domain value allows any segment, "*" only allows the wildcard
+     * segment, multiple domain values separated by "|" allow each of them. With wildcards, a specified domain value also allows the
+     * wildcard segment and the default value matches as well. Pattern segments after the last specified domain value are not restricted.
+     */
+    private static final class PatternFilter {
+
+        private final int[][] allowedSegments;
+        private final int requiredLength;
+        private final boolean matchesDefault;
+
+        private PatternFilter(final List<String> domains, final boolean withWildcards, final DomainResolver resolver,
+                final DomainValueDictionary dictionary) {
+            allowedSegments = new int[domains.size()][];
+            int lastSpecified = -1;
+            for (int i = 0; i < domains.size(); i++) {
+                final String domainValue = resolver.getDomainValue(domains.get(i));
+                if (domainValue == null) {
+                    continue;
+                }
+                lastSpecified = i;
+                if (domainValue.equals("*")) {
+                    allowedSegments[i] = new int[]{DomainValueDictionary.WILDCARD};
+                } else if (domainValue.contains(DOMAIN_SEPARATOR)) {
+                    final String[] alternatives = domainValue.split("\\|");
+                    allowedSegments[i] = new int[alternatives.length];
+                    for (int j = 0; j < alternatives.length; j++) {
+                        allowedSegments[i][j] = dictionary.lookup(alternatives[j]);
+                    }
+                } else if (withWildcards) {
+                    allowedSegments[i] = new int[]{dictionary.lookup(domainValue), DomainValueDictionary.WILDCARD};
+                } else {
+                    allowedSegments[i] = new int[]{dictionary.lookup(domainValue)};
+                }
             }
-            builder.append(domainValue).append("\\|");
+            requiredLength = lastSpecified + 1;
+            matchesDefault = withWildcards;
         }
-        while (builder.length() >= 7 && builder.lastIndexOf("[^|]*\\|") == builder.length() - 7) {
-            builder.delete(builder.length() - 7, builder.length());
+
+        private boolean matches(final int[] encodedPattern) {
+            if (encodedPattern.length == 0 && matchesDefault) {
+                return true;
+            }
+            if (encodedPattern.length < requiredLength) {
+                return false;
+            }
+            for (int i = 0; i < requiredLength; i++) {
+                if (allowedSegments[i] != null && !contains(allowedSegments[i], encodedPattern[i])) {
+                    return false;
+                }
+            }
+            return true;
         }
-        builder.append(".*");
-        if (withWildcards) {
-            builder.append("|^$");
+
+        private static boolean contains(final int[] ids, final int id) {
+            for (int allowed : ids) {
+                if (allowed == id) {
+                    return true;
+                }
+            }
+            return false;
         }
-        return new RegexMatcher(builder.toString());
     }
 
-    public Collection<DomainSpecificValue> removeAll(List<String> domains, DomainResolver resolver) {
-        final Collection<DomainSpecificValue> matchingValues = findMatchingValues(domains, resolver);
-        this.domainSpecificValues.removeAll(matchingValues);
-        return matchingValues;
-    }
+    /**
+     * Read only set view of a values array. Lookups compare by precedence like a sorted set.
+     */
+    private static final class ValuesView extends AbstractSet<DomainSpecificValue> {
 
-    public boolean isEmpty() {
-        return domainSpecificValues.isEmpty();
+        private final DomainSpecificValue[] values;
+
+        private ValuesView(final DomainSpecificValue[] values) {
+            this.values = values;
+        }
+
+        @Override
+        public Iterator<DomainSpecificValue> iterator() {
+            return Collections.unmodifiableList(Arrays.asList(values)).iterator();
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public boolean contains(final Object o) {
+            return o instanceof DomainSpecificValue && Arrays.binarySearch(values, (DomainSpecificValue) o) >= 0;
+        }
     }
 }
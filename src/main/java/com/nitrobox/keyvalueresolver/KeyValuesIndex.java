@@ -0,0 +1,226 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable snapshot of the DomainSpecificValues of a single key used for resolution. Small snapshots are searched one by one in
+ * precedence order. Large snapshots additionally build a trie: each level of the trie corresponds to one domain, edges are labeled with
+ * the domain value of the pattern or are the wildcard edge. Resolution follows the exact and the wildcard edge on every level, so the work
+ * done depends on the number of domains and not on the number of overridden values.
+ * <p>
+ * Values are matched by their patterns encoded through a DomainValueDictionary, so the domain values of a query are compared as ints.
+ * Values with patterns that contain a '*' within a domain value (a glob instead of a full wildcard) can not be put into the trie or be
+ * compared as ints, they are matched against the domain values as strings instead. The change set of each value is kept as a bit of a
+ * ChangeSetRegistry, so checking it against the active change sets of a query is a single AND.
+ */
+final class KeyValuesIndex {
+
+    private static final int[] NO_POSITIONS = new int[0];
+    private static final int NOT_FOUND = -1;
+
+    private final DomainSpecificValue[] values;
+    private final int[][] encodedPatterns; // null for patterns containing globs
+    private final long[] changeSetBits; // 0 for values without a change set or with a change set without a bit
+    private final DomainValueDictionary dictionary;
+    private final ChangeSetRegistry changeSetRegistry;
+    private final Node root;
+    private final int[] unindexedPositions;
+    private final int version;
+
+    /**
+     * @param values            the values to index, in the order defined by DomainSpecificValue.compareTo, the array is not copied and must
+     *                          not be modified afterwards
+     * @param version           version of the KeyValues the values were taken from
+     * @param trieThreshold     minimum number of values to build a trie for, fewer values are searched one by one
+     * @param dictionary        the dictionary to encode patterns with, queries must be encoded with the same dictionary
+     * @param changeSetRegistry the registry to get change set bits from, active change set masks must use the same registry
+     */
+    KeyValuesIndex(DomainSpecificValue[] values, int version, int trieThreshold, DomainValueDictionary dictionary,
+            ChangeSetRegistry changeSetRegistry) {
+        this.values = values;
+        this.version = version;
+        this.dictionary = dictionary;
+        this.changeSetRegistry = changeSetRegistry;
+        this.encodedPatterns = new int[this.values.length][];
+        this.changeSetBits = new long[this.values.length];
+        for (int i = 0; i < this.values.length; i++) {
+            final DomainSpecificValue value = this.values[i];
+            if (!SegmentMatcher.containsGlobs(value.getPattern())) {
+                encodedPatterns[i] = dictionary.encodePattern(value.getPattern());
+            }
+            if (!value.noChangeSet()) {
+                changeSetBits[i] = changeSetRegistry.bitOf(value.getChangeSet());
+            }
+        }
+        if (this.values.length >= trieThreshold) {
+            final Node unindexed = new Node();
+            this.root = new Node();
+            for (int i = 0; i < this.values.length; i++) {
+                add(i, unindexed);
+            }
+            this.unindexedPositions = Arrays.copyOf(unindexed.positions, unindexed.count);
+        } else {
+            this.root = null;
+            this.unindexedPositions = NO_POSITIONS;
+        }
+    }
+
+    private void add(int position, Node unindexed) {
+        final String pattern = values[position].getPattern();
+        Node node = root;
+        int start = 0;
+        int end;
+        while ((end = pattern.indexOf('|', start)) >= 0) {
+            final String segment = pattern.substring(start, end);
+            if ("*".equals(segment)) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node();
+                }
+                node = node.wildcard;
+            } else if (segment.indexOf('*') >= 0) {
+                unindexed.add(position);
+                return;
+            } else {
+                node = node.children.computeIfAbsent(segment, s -> new Node());
+            }
+            start = end + 1;
+        }
+        node.add(position);
+    }
+
+    int getVersion() {
+        return version;
+    }
+
+    DomainValueDictionary getDictionary() {
+        return dictionary;
+    }
+
+    ChangeSetRegistry getChangeSetRegistry() {
+        return changeSetRegistry;
+    }
+
+    boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * Find the DomainSpecificValue with the highest precedence, that matches the provided domain values.
+     *
+     * @param domainValues        the resolved domain values, null values are not allowed
+     * @param encodedDomainValues the domain values encoded with the dictionary of this index
+     * @param length              number of valid entries in domainValues and encodedDomainValues
+     * @param activeChangeSetMask the active change sets as mask of the change set registry of this index
+     * @param activeChangeSets    the active change sets or null to consider all change sets active
+     * @return the best matching value or null, when no value matches
+     */
+    DomainSpecificValue find(String[] domainValues, int[] encodedDomainValues, int length, long activeChangeSetMask,
+            Collection<String> activeChangeSets) {
+        if (root == null) {
+            for (int i = 0; i < values.length; i++) {
+                if (isActive(i, activeChangeSetMask, activeChangeSets) && matches(i, domainValues, encodedDomainValues, length)) {
+                    return values[i];
+                }
+            }
+            return null;
+        }
+        int best = visit(root, 0, domainValues, length, activeChangeSetMask, activeChangeSets, NOT_FOUND);
+        for (int position : unindexedPositions) {
+            if (isBetter(position, best) && isActive(position, activeChangeSetMask, activeChangeSets)
+                    && values[position].patternMatches(domainValues, length)) {
+                best = position;
+            }
+        }
+        return best == NOT_FOUND ? null : values[best];
+    }
+
+    private boolean matches(int position, String[] domainValues, int[] encodedDomainValues, int length) {
+        final int[] encodedPattern = encodedPatterns[position];
+        if (encodedPattern == null) {
+            return values[position].patternMatches(domainValues, length);
+        }
+        if (encodedPattern.length > length) {
+            return false;
+        }
+        for (int i = 0; i < encodedPattern.length; i++) {
+            if (encodedPattern[i] != DomainValueDictionary.WILDCARD && encodedPattern[i] != encodedDomainValues[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int visit(Node node, int depth, String[] domainValues, int length, long activeChangeSetMask,
+            Collection<String> activeChangeSets, int best) {
+        for (int i = 0; i < node.count; i++) {
+            final int position = node.positions[i];
+            if (!isBetter(position, best)) {
+                break; // positions of a node are sorted, no later value can be better
+            }
+            if (isActive(position, activeChangeSetMask, activeChangeSets)) {
+                best = position;
+                break;
+            }
+        }
+        if (depth < length) {
+            final Node child = node.children.get(domainValues[depth]);
+            if (child != null) {
+                best = visit(child, depth + 1, domainValues, length, activeChangeSetMask, activeChangeSets, best);
+            }
+            if (node.wildcard != null) {
+                best = visit(node.wildcard, depth + 1, domainValues, length, activeChangeSetMask, activeChangeSets, best);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Values are sorted by precedence, so a lower position means a higher precedence.
+     */
+    private static boolean isBetter(int position, int best) {
+        return best == NOT_FOUND || position < best;
+    }
+
+    private boolean isActive(int position, long activeChangeSetMask, Collection<String> activeChangeSets) {
+        final long bit = changeSetBits[position];
+        if (bit != 0L) {
+            return (activeChangeSetMask & bit) != 0L;
+        }
+        return activeChangeSets == null || values[position].isInChangeSets(activeChangeSets);
+    }
+
+    private static final class Node {
+
+        private final Map<String, Node> children = new HashMap<>();
+        private int[] positions = NO_POSITIONS;
+        private int count;
+        private Node wildcard;
+
+        private void add(int position) {
+            if (count == positions.length) {
+                positions = Arrays.copyOf(positions, Math.max(1, count * 2));
+            }
+            positions[count++] = position;
+        }
+    }
+}
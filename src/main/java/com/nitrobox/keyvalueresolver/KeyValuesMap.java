@@ -0,0 +1,57 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Collection;
+import java.util.function.Function;
+
+/**
+ * The KeyValues of a ValuesStore by key. The ValuesStore serializes writes of a key, implementations only need to be safe for concurrent
+ * reads and writes of different keys.
+ * <p>
+ * KeyValues returned by get may be decoded for the call only. A caller changing them tells the map with changed, so the changes are
+ * kept. KeyValues returned by computeIfAbsent are always kept by the map.
+ */
+interface KeyValuesMap {
+
+    /**
+     * @return the KeyValues of the key or null, when the map has no values for it
+     */
+    KeyValues get(String key);
+
+    KeyValues computeIfAbsent(String key, Function<String, KeyValues> create);
+
+    void put(String key, KeyValues keyValues);
+
+    /**
+     * @return the removed KeyValues or null, when the map had no values for the key
+     */
+    KeyValues remove(String key);
+
+    /**
+     * Keep the changes made to KeyValues returned by get.
+     */
+    void changed(KeyValues keyValues);
+
+    /**
+     * @return a live view of all KeyValues
+     */
+    Collection<KeyValues> values();
+
+    int size();
+}
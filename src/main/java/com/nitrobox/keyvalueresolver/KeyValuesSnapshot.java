@@ -0,0 +1,186 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compact binary format for all KeyValues of a KeyValueResolver, to start a KeyValueResolver from a local file instead of loading all
+ * values from persistence. Keys, descriptions, patterns and change sets are written as UTF-8, values through a {@link ValueCodec}.
+ * Patterns and change sets are written once and referenced by number afterwards. A missing description is written as an empty one, as
+ * KeyValues do not tell them apart.
+ * <p>
+ * Layout: magic, version, version of the DeltaPersistence changes contained, number of keys, for each key: key, description, number of
+ * values and for each value: pattern, change set and value. The magic number is repeated at the end, so a truncated snapshot is
+ * detected.
+ */
+public final class KeyValuesSnapshot {
+
+    private static final int MAGIC = 0x4B565253; // "KVRS"
+    private static final int VERSION = 1;
+    private static final int NULL_REFERENCE = -1;
+    private final List<KeyValues> keyValues;
+    private final long changesVersion;
+
+    private KeyValuesSnapshot(final List<KeyValues> keyValues, final long changesVersion) {
+        this.keyValues = keyValues;
+        this.changesVersion = changesVersion;
+    }
+
+    public List<KeyValues> getKeyValues() {
+        return keyValues;
+    }
+
+    /**
+     * @return the version of the DeltaPersistence changes contained in the snapshot, or DeltaPersistence.UNKNOWN_VERSION
+     */
+    public long getChangesVersion() {
+        return changesVersion;
+    }
+
+    /**
+     * Write a snapshot of the KeyValues, without a version of DeltaPersistence changes. Does not close the stream.
+     */
+    public static void write(final Collection<KeyValues> keyValues, final OutputStream out, final ValueCodec valueCodec)
+            throws IOException {
+        write(keyValues, DeltaPersistence.UNKNOWN_VERSION, out, valueCodec);
+    }
+
+    /**
+     * Write a snapshot of the KeyValues. Does not close the stream.
+     *
+     * @param changesVersion the version of the DeltaPersistence changes contained in the KeyValues, so a KeyValueResolver started from
+     *                       the snapshot asks for the changes since then, or DeltaPersistence.UNKNOWN_VERSION
+     */
+    public static void write(final Collection<KeyValues> keyValues, final long changesVersion, final OutputStream out,
+            final ValueCodec valueCodec) throws IOException {
+        final List<KeyValues> snapshot = new ArrayList<>(keyValues);
+        final DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+        final Map<String, Integer> references = new HashMap<>();
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeLong(changesVersion);
+        data.writeInt(snapshot.size());
+        for (KeyValues kv : snapshot) {
+            DefaultValueCodec.writeString(kv.getKey(), data);
+            DefaultValueCodec.writeString(kv.getDescription(), data);
+            final Set<DomainSpecificValue> domainSpecificValues = kv.getDomainSpecificValues();
+            data.writeInt(domainSpecificValues.size());
+            for (DomainSpecificValue domainSpecificValue : domainSpecificValues) {
+                writeReference(domainSpecificValue.getPattern(), references, data);
+                writeReference(domainSpecificValue.getChangeSet(), references, data);
+                valueCodec.write(domainSpecificValue.getValue(), data);
+            }
+        }
+        data.writeInt(MAGIC);
+        data.flush();
+    }
+
+    /**
+     * Read the KeyValues of a snapshot. Does not close the stream, but may read ahead beyond the end of the snapshot.
+     *
+     * @throws IOException when the stream does not contain a complete snapshot
+     */
+    public static KeyValuesSnapshot read(final InputStream in, final DomainSpecificValueFactory domainSpecificValueFactory,
+            final ValueCodec valueCodec) throws IOException {
+        final DataInputStream data = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Not a KeyValueResolver snapshot");
+        }
+        final int version = data.readInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported snapshot version: " + version);
+        }
+        final long changesVersion = data.readLong();
+        final int keyCount = readCount(data);
+        final List<String> references = new ArrayList<>();
+        final List<KeyValues> result = new ArrayList<>(keyCount);
+        for (int i = 0; i < keyCount; i++) {
+            final String key = DefaultValueCodec.readString(data);
+            final String description = DefaultValueCodec.readString(data);
+            final int valueCount = readCount(data);
+            final List<DomainSpecificValue> domainSpecificValues = new ArrayList<>(valueCount);
+            for (int j = 0; j < valueCount; j++) {
+                final String pattern = readReference(references, data);
+                final String changeSet = readReference(references, data);
+                domainSpecificValues.add(domainSpecificValueFactory.createFromPattern(valueCodec.read(data), changeSet, pattern));
+            }
+            result.add(new KeyValues(key, domainSpecificValueFactory, description, domainSpecificValues));
+        }
+        if (data.readInt() != MAGIC) {
+            throw new IOException("Snapshot is corrupt, end marker not found");
+        }
+        return new KeyValuesSnapshot(result, changesVersion);
+    }
+
+    /**
+     * Write the number of a string written before, or the next number followed by the string.
+     */
+    private static void writeReference(final String value, final Map<String, Integer> references, final DataOutputStream data)
+            throws IOException {
+        if (value == null) {
+            data.writeInt(NULL_REFERENCE);
+            return;
+        }
+        final Integer reference = references.get(value);
+        if (reference != null) {
+            data.writeInt(reference);
+            return;
+        }
+        final int newReference = references.size();
+        references.put(value, newReference);
+        data.writeInt(newReference);
+        DefaultValueCodec.writeString(value, data);
+    }
+
+    private static String readReference(final List<String> references, final DataInputStream data) throws IOException {
+        final int reference = data.readInt();
+        if (reference == NULL_REFERENCE) {
+            return null;
+        }
+        if (reference == references.size()) {
+            final String value = DefaultValueCodec.readString(data);
+            references.add(value);
+            return value;
+        }
+        if (reference < 0 || reference > references.size()) {
+            throw new IOException("Snapshot is corrupt, invalid reference: " + reference);
+        }
+        return references.get(reference);
+    }
+
+    private static int readCount(final DataInputStream data) throws IOException {
+        final int count = data.readInt();
+        if (count < 0) {
+            throw new IOException("Snapshot is corrupt, invalid count: " + count);
+        }
+        return count;
+    }
+}
@@ -37,6 +37,8 @@ public class MapBackedDomainResolver implements DomainResolver {
 
     private final Map<String, String> map = new HashMap<>();
     private final Collection<String> activeChangeSets = new HashSet<>();
+    private final Collection<String> unmodifiableActiveChangeSets = Collections.unmodifiableCollection(activeChangeSets);
+    private volatile ChangeSetMask changeSetMask;
 
     @Override
     public String getDomainValue(final String domain) {
@@ -45,7 +47,7 @@ public class MapBackedDomainResolver implements DomainResolver {
 
     @Override
     public Collection<String> getActiveChangeSets() {
-        return Collections.unmodifiableCollection(activeChangeSets);
+        return unmodifiableActiveChangeSets;
     }
 
     public MapBackedDomainResolver set(final String domain, final String domainValue) {
@@ -55,9 +57,24 @@ public class MapBackedDomainResolver implements DomainResolver {
 
     public MapBackedDomainResolver addActiveChangeSets(final String... changeSets) {
         activeChangeSets.addAll(Arrays.asList(changeSets));
+        changeSetMask = null;
         return this;
     }
 
+    /**
+     * Get the active change sets as a bitmask of the given registry. The mask is computed once and only recomputed, when the active
+     * change sets or the change sets known to the registry change.
+     */
+    public long getActiveChangeSetMask(final ChangeSetRegistry registry) {
+        ChangeSetMask mask = changeSetMask;
+        final int registered = registry.size();
+        if (mask == null || mask.registry != registry || mask.registered != registered) {
+            mask = new ChangeSetMask(registry, registered, registry.maskOf(activeChangeSets));
+            changeSetMask = mask;
+        }
+        return mask.mask;
+    }
+
     private void dumpMap(StringBuilder sb) {
         sb.append('{');
         boolean first = true;
@@ -100,4 +117,17 @@ public class MapBackedDomainResolver implements DomainResolver {
         MapBackedDomainResolver other = (MapBackedDomainResolver) obj;
         return map.equals(other.map);
     }
+
+    private static final class ChangeSetMask {
+
+        private final ChangeSetRegistry registry;
+        private final int registered;
+        private final long mask;
+
+        private ChangeSetMask(ChangeSetRegistry registry, int registered, long mask) {
+            this.registry = registry;
+            this.registered = registered;
+            this.mask = mask;
+        }
+    }
 }
@@ -0,0 +1,428 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read only file of all KeyValues of a KeyValueResolver, that is memory-mapped instead of read onto the heap. The file holds an open
+ * addressing hash index of the keys and one record per key with its description, patterns, change sets and values written through a
+ * {@link ValueCodec}. A lookup probes the index and decodes the record of the key, so only the KeyValues in use are on the heap. A
+ * missing description is written as an empty one, as KeyValues do not tell them apart.
+ * <p>
+ * Layout: a header with magic, version, segment size, number of keys, index size and the version of the DeltaPersistence changes
+ * contained, the index of 8 byte slots holding a hash tag and
+ * the offset of a record, the records and the magic number again, so a truncated file is detected. The file is mapped in segments, as a
+ * single mapping is limited to 2 GB. Records never cross a segment boundary.
+ */
+public final class MappedKeyValuesFile {
+
+    private static final int MAGIC = 0x4B56524D; // "KVRM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int SLOT_SIZE = 8;
+    private static final int DEFAULT_SEGMENT_SHIFT = 30;
+    private static final int OFFSET_BITS = 40;
+    private static final long OFFSET_MASK = (1L << OFFSET_BITS) - 1;
+
+    private final Segments segments;
+    private final ValueCodec valueCodec;
+    private final int keyCount;
+    private final int tableSize;
+    private final long changesVersion;
+
+    private MappedKeyValuesFile(final Segments segments, final ValueCodec valueCodec, final int keyCount, final int tableSize,
+            final long changesVersion) {
+        this.segments = segments;
+        this.valueCodec = valueCodec;
+        this.keyCount = keyCount;
+        this.tableSize = tableSize;
+        this.changesVersion = changesVersion;
+    }
+
+    /**
+     * Write all KeyValues to a file, replacing its contents.
+     */
+    public static void write(final Collection<KeyValues> keyValues, final Path file, final ValueCodec valueCodec) throws IOException {
+        write(keyValues, DeltaPersistence.UNKNOWN_VERSION, file, valueCodec);
+    }
+
+    /**
+     * Write all KeyValues to a file, replacing its contents.
+     *
+     * @param changesVersion the version of the DeltaPersistence changes contained in the KeyValues, or DeltaPersistence.UNKNOWN_VERSION
+     */
+    public static void write(final Collection<KeyValues> keyValues, final long changesVersion, final Path file,
+            final ValueCodec valueCodec) throws IOException {
+        write(keyValues, changesVersion, file, valueCodec, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /*package*/ static void write(final Collection<KeyValues> keyValues, final long changesVersion, final Path file,
+            final ValueCodec valueCodec, final int segmentShift) throws IOException {
+        final List<KeyValues> values = new ArrayList<>(keyValues);
+        final int tableSize = tableSizeFor(values.size());
+        final long recordsStart = HEADER_SIZE + (long) tableSize * SLOT_SIZE;
+        final long segmentSize = 1L << segmentShift;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            final Segments index = Segments.map(channel, MapMode.READ_WRITE, HEADER_SIZE, recordsStart, segmentShift);
+            final ByteArrayOutputStream record = new ByteArrayOutputStream(256);
+            final DataOutputStream recordData = new DataOutputStream(record);
+            channel.position(recordsStart);
+            final OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+            long position = recordsStart;
+            for (KeyValues kv : values) {
+                record.reset();
+                writeRecord(kv, recordData, valueCodec);
+                if (record.size() > segmentSize) {
+                    throw new IllegalArgumentException("The values of key \"" + kv.getKey() + "\" do not fit into a segment");
+                }
+                final long segmentEnd = (position | (segmentSize - 1)) + 1;
+                if (position + record.size() > segmentEnd) {
+                    position = pad(out, position, segmentEnd);
+                }
+                if (position > OFFSET_MASK) {
+                    throw new IllegalArgumentException("Too many values for a mapped file");
+                }
+                insert(index, tableSize, kv.getKey(), position);
+                record.writeTo(out);
+                position += record.size();
+            }
+            final DataOutputStream data = new DataOutputStream(out);
+            data.writeInt(MAGIC);
+            data.flush();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(segmentShift).putInt(values.size()).putInt(tableSize).putLong(changesVersion)
+                    .flip();
+            channel.write(header, 0);
+        }
+    }
+
+    /**
+     * Map a file written with {@link #write(Collection, Path, ValueCodec)}. The mapping stays valid after the file is deleted or replaced
+     * and is released when the returned object is garbage collected.
+     *
+     * @throws IOException when the file is not a complete mapped KeyValues file
+     */
+    public static MappedKeyValuesFile open(final Path file, final ValueCodec valueCodec) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (size < HEADER_SIZE + 4 || channel.read(header, 0) != HEADER_SIZE || header.getInt(0) != MAGIC) {
+                throw new IOException("Not a mapped KeyValues file");
+            }
+            final int version = header.getInt(4);
+            if (version != VERSION) {
+                throw new IOException("Unsupported mapped KeyValues file version: " + version);
+            }
+            final int segmentShift = header.getInt(8);
+            final int keyCount = header.getInt(12);
+            final int tableSize = header.getInt(16);
+            if (segmentShift < 3 || segmentShift > DEFAULT_SEGMENT_SHIFT || keyCount < 0 || Integer.bitCount(tableSize) != 1
+                    || tableSize < keyCount || HEADER_SIZE + (long) tableSize * SLOT_SIZE + 4 > size) {
+                throw new IOException("Mapped KeyValues file is corrupt, invalid header");
+            }
+            final ByteBuffer end = ByteBuffer.allocate(4);
+            if (channel.read(end, size - 4) != 4 || end.getInt(0) != MAGIC) {
+                throw new IOException("Mapped KeyValues file is corrupt, end marker not found");
+            }
+            return new MappedKeyValuesFile(Segments.map(channel, MapMode.READ_ONLY, 0, size, segmentShift), valueCodec, keyCount,
+                    tableSize, header.getLong(20));
+        }
+    }
+
+    public int size() {
+        return keyCount;
+    }
+
+    /**
+     * @return the version of the DeltaPersistence changes contained in the file, or DeltaPersistence.UNKNOWN_VERSION
+     */
+    public long getChangesVersion() {
+        return changesVersion;
+    }
+
+    public boolean containsKey(final String key) {
+        return find(key) != 0;
+    }
+
+    /**
+     * Decode the KeyValues of a key. Every call decodes a new KeyValues.
+     *
+     * @return the KeyValues or null, when the file has no values for the key
+     * @throws UncheckedIOException when the record of the key cannot be decoded
+     */
+    public KeyValues get(final String key, final DomainSpecificValueFactory domainSpecificValueFactory) {
+        final long offset = find(key);
+        return offset == 0 ? null : read(offset, domainSpecificValueFactory);
+    }
+
+    /**
+     * @return the keys of the file in no particular order, read from the file while iterating
+     */
+    public Iterator<String> keys() {
+        return new Iterator<>() {
+            private int slot = nextSlot(0);
+
+            @Override
+            public boolean hasNext() {
+                return slot < tableSize;
+            }
+
+            @Override
+            public String next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                final long offset = segments.getLong(slotPosition(slot)) & OFFSET_MASK;
+                slot = nextSlot(slot + 1);
+                try {
+                    return DefaultValueCodec.readString(segments.openStream(offset));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    private int nextSlot(int slot) {
+        while (slot < tableSize && segments.getLong(slotPosition(slot)) == 0) {
+            slot++;
+        }
+        return slot;
+    }
+
+    /**
+     * @return the offset of the record of a key or 0, when the file has no values for the key
+     */
+    private long find(final String key) {
+        final byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        final int hash = hash(key);
+        final long tag = tag(hash);
+        for (int slot = hash & (tableSize - 1); ; slot = (slot + 1) & (tableSize - 1)) {
+            final long entry = segments.getLong(slotPosition(slot));
+            if (entry == 0) {
+                return 0;
+            }
+            final long offset = entry & OFFSET_MASK;
+            if ((entry & ~OFFSET_MASK) == tag && segments.keyEquals(offset, keyBytes)) {
+                return offset;
+            }
+        }
+    }
+
+    private KeyValues read(final long offset, final DomainSpecificValueFactory domainSpecificValueFactory) {
+        try {
+            final DataInputStream data = segments.openStream(offset);
+            final String key = DefaultValueCodec.readString(data);
+            final String description = DefaultValueCodec.readString(data);
+            final int valueCount = data.readInt();
+            if (valueCount < 0) {
+                throw new IOException("Mapped KeyValues file is corrupt, invalid count: " + valueCount);
+            }
+            final List<DomainSpecificValue> domainSpecificValues = new ArrayList<>(valueCount);
+            for (int i = 0; i < valueCount; i++) {
+                final String pattern = DefaultValueCodec.readString(data);
+                final String changeSet = data.readBoolean() ? DefaultValueCodec.readString(data) : null;
+                domainSpecificValues.add(domainSpecificValueFactory.createFromPattern(valueCodec.read(data), changeSet, pattern));
+            }
+            return new KeyValues(key, domainSpecificValueFactory, description, domainSpecificValues);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeRecord(final KeyValues kv, final DataOutputStream data, final ValueCodec valueCodec) throws IOException {
+        DefaultValueCodec.writeString(kv.getKey(), data);
+        DefaultValueCodec.writeString(kv.getDescription(), data);
+        final Set<DomainSpecificValue> domainSpecificValues = kv.getDomainSpecificValues();
+        data.writeInt(domainSpecificValues.size());
+        for (DomainSpecificValue domainSpecificValue : domainSpecificValues) {
+            DefaultValueCodec.writeString(domainSpecificValue.getPattern(), data);
+            writeNullableString(domainSpecificValue.getChangeSet(), data);
+            valueCodec.write(domainSpecificValue.getValue(), data);
+        }
+    }
+
+    private static void writeNullableString(final String value, final DataOutputStream data) throws IOException {
+        data.writeBoolean(value != null);
+        if (value != null) {
+            DefaultValueCodec.writeString(value, data);
+        }
+    }
+
+    private static long pad(final OutputStream out, long position, final long end) throws IOException {
+        while (position < end) {
+            out.write(0);
+            position++;
+        }
+        return position;
+    }
+
+    private static void insert(final Segments index, final int tableSize, final String key, final long offset) {
+        final int hash = hash(key);
+        int slot = hash & (tableSize - 1);
+        while (index.getLong(slotPosition(slot)) != 0) {
+            slot = (slot + 1) & (tableSize - 1);
+        }
+        index.putLong(slotPosition(slot), tag(hash) | offset);
+    }
+
+    /**
+     * @return a power of two at least twice the number of keys, so probe sequences stay short
+     */
+    private static int tableSizeFor(final int keyCount) {
+        if (keyCount > 1 << 29) {
+            throw new IllegalArgumentException("Too many keys for a mapped file: " + keyCount);
+        }
+        return Math.max(16, Integer.highestOneBit(Math.max(1, keyCount * 2 - 1)) << 1);
+    }
+
+    private static long slotPosition(final int slot) {
+        return HEADER_SIZE + (long) slot * SLOT_SIZE;
+    }
+
+    private static int hash(final String key) {
+        final int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * The upper bits of the hash not used to pick the slot, kept in the slot to skip most records of other keys without reading them.
+     */
+    private static long tag(final int hash) {
+        return ((long) (hash >>> 8) & 0xFFFFFF) << OFFSET_BITS;
+    }
+
+    /**
+     * A region of a file mapped in segments of a power of two size, aligned to positions in the file. Positions are absolute positions in
+     * the file. Reads use absolute gets or duplicates of the buffers, so they are safe from any thread.
+     */
+    private static final class Segments {
+
+        private final ByteBuffer[] buffers;
+        private final long[] bufferStarts;
+        private final int shift;
+        private final long firstSegment;
+
+        private Segments(final ByteBuffer[] buffers, final long[] bufferStarts, final int shift, final long firstSegment) {
+            this.buffers = buffers;
+            this.bufferStarts = bufferStarts;
+            this.shift = shift;
+            this.firstSegment = firstSegment;
+        }
+
+        private static Segments map(final FileChannel channel, final MapMode mode, final long start, final long end, final int shift)
+                throws IOException {
+            final long firstSegment = start >>> shift;
+            final int count = end > start ? (int) (((end - 1) >>> shift) - firstSegment + 1) : 0;
+            final ByteBuffer[] buffers = new ByteBuffer[count];
+            final long[] bufferStarts = new long[count];
+            for (int i = 0; i < count; i++) {
+                final long bufferStart = Math.max(start, (firstSegment + i) << shift);
+                final long bufferEnd = Math.min(end, (firstSegment + i + 1) << shift);
+                buffers[i] = channel.map(mode, bufferStart, bufferEnd - bufferStart);
+                bufferStarts[i] = bufferStart;
+            }
+            return new Segments(buffers, bufferStarts, shift, firstSegment);
+        }
+
+        private long getLong(final long position) {
+            final int segment = segment(position);
+            return buffers[segment].getLong((int) (position - bufferStarts[segment]));
+        }
+
+        private void putLong(final long position, final long value) {
+            final int segment = segment(position);
+            buffers[segment].putLong((int) (position - bufferStarts[segment]), value);
+        }
+
+        private boolean keyEquals(final long position, final byte[] keyBytes) {
+            final int segment = segment(position);
+            final ByteBuffer buffer = buffers[segment];
+            final int index = (int) (position - bufferStarts[segment]);
+            if (buffer.getInt(index) != keyBytes.length) {
+                return false;
+            }
+            for (int i = 0; i < keyBytes.length; i++) {
+                if (buffer.get(index + 4 + i) != keyBytes[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private DataInputStream openStream(final long position) {
+            final int segment = segment(position);
+            final ByteBuffer buffer = buffers[segment].duplicate();
+            buffer.position((int) (position - bufferStarts[segment]));
+            return new DataInputStream(new BufferInputStream(buffer));
+        }
+
+        private int segment(final long position) {
+            return (int) ((position >>> shift) - firstSegment);
+        }
+    }
+
+    private static final class BufferInputStream extends InputStream {
+
+        private final ByteBuffer buffer;
+
+        private BufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            final int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+    }
+}
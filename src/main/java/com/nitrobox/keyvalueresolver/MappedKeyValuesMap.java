@@ -0,0 +1,163 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps the KeyValues in a {@link MappedKeyValuesFile} off the heap and decodes them on every get. Only KeyValues changed after the file
+ * was opened and the keys removed since then are kept on the heap, in front of the file.
+ */
+final class MappedKeyValuesMap implements KeyValuesMap {
+
+    private final MappedKeyValuesFile file;
+    private final DomainSpecificValueFactory domainSpecificValueFactory;
+    private final UnaryOperator<KeyValues> attach;
+    private final Map<String, KeyValues> changedKeyValues = new ConcurrentHashMap<>();
+    private final Set<String> removedKeys = ConcurrentHashMap.newKeySet();
+
+    /**
+     * @param attach called with every KeyValues decoded from the file, before it is returned
+     */
+    MappedKeyValuesMap(final MappedKeyValuesFile file, final DomainSpecificValueFactory domainSpecificValueFactory,
+            final UnaryOperator<KeyValues> attach) {
+        this.file = file;
+        this.domainSpecificValueFactory = domainSpecificValueFactory;
+        this.attach = attach;
+    }
+
+    @Override
+    public KeyValues get(final String key) {
+        final KeyValues keyValues = changedKeyValues.get(key);
+        if (keyValues != null || removedKeys.contains(key)) {
+            return keyValues;
+        }
+        return decode(key);
+    }
+
+    private KeyValues decode(final String key) {
+        final KeyValues keyValues = file.get(key, domainSpecificValueFactory);
+        return keyValues == null ? null : attach.apply(keyValues);
+    }
+
+    @Override
+    public KeyValues computeIfAbsent(final String key, final Function<String, KeyValues> create) {
+        final KeyValues keyValues = changedKeyValues.computeIfAbsent(key, k -> {
+            final KeyValues decoded = removedKeys.contains(k) ? null : decode(k);
+            return decoded != null ? decoded : create.apply(k);
+        });
+        removedKeys.remove(key);
+        return keyValues;
+    }
+
+    @Override
+    public void put(final String key, final KeyValues keyValues) {
+        changedKeyValues.put(key, keyValues);
+        removedKeys.remove(key);
+    }
+
+    @Override
+    public KeyValues remove(final String key) {
+        final KeyValues keyValues = get(key);
+        if (file.containsKey(key)) {
+            removedKeys.add(key);
+        }
+        changedKeyValues.remove(key);
+        return keyValues;
+    }
+
+    @Override
+    public void changed(final KeyValues keyValues) {
+        put(keyValues.getKey(), keyValues);
+    }
+
+    /**
+     * @return a view of the changed KeyValues followed by the KeyValues of the file not changed or removed, decoded while iterating
+     */
+    @Override
+    public Collection<KeyValues> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<KeyValues> iterator() {
+                return new ValuesIterator();
+            }
+
+            @Override
+            public int size() {
+                return MappedKeyValuesMap.this.size();
+            }
+        };
+    }
+
+    @Override
+    public int size() {
+        int size = changedKeyValues.size();
+        for (Iterator<String> keys = file.keys(); keys.hasNext(); ) {
+            if (isUnchanged(keys.next())) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    private boolean isUnchanged(final String key) {
+        return !changedKeyValues.containsKey(key) && !removedKeys.contains(key);
+    }
+
+    private final class ValuesIterator implements Iterator<KeyValues> {
+
+        private final Iterator<KeyValues> changed = changedKeyValues.values().iterator();
+        private final Iterator<String> keys = file.keys();
+        private KeyValues next;
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (changed.hasNext()) {
+                    next = changed.next();
+                } else if (keys.hasNext()) {
+                    final String key = keys.next();
+                    if (isUnchanged(key)) {
+                        next = decode(key);
+                    }
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public KeyValues next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            final KeyValues result = next;
+            next = null;
+            return result;
+        }
+    }
+}
@@ -28,4 +28,19 @@ package com.nitrobox.keyvalueresolver;
 public interface Matcher {
 
     boolean matches(String domainString);
+
+    /**
+     * Match against already resolved domain values instead of a domain string. Implementations should override this to avoid building
+     * the domain string.
+     *
+     * @param domainValues the domain values in the order of the domains, null values are treated like the empty string
+     * @param length       number of valid entries in domainValues
+     */
+    default boolean matches(String[] domainValues, int length) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            builder.append(domainValues[i] == null ? "" : domainValues[i]).append('|');
+        }
+        return matches(builder.toString());
+    }
 }
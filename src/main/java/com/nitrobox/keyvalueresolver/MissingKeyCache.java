@@ -0,0 +1,168 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Opt-in cache for keys that persistence has no values for. Set it on a KeyValueResolverImpl to use it. While a key is cached as missing,
+ * it is not loaded from persistence again, so a missing key that is queried often does not cause a query to persistence every time.
+ * <p>
+ * Keys are remembered for a limited time only, so values added to persistence by others become visible after that time. Setting a value
+ * for a key or reloading it forgets the key right away. The cache is bounded, when it is full, expired keys are removed first and then
+ * the keys that were added first.
+ */
+public class MissingKeyCache {
+
+    private final int maximumSize;
+    private final long timeToLiveNanos;
+    private final LongSupplier nanoClock;
+    private final Map<String, Long> expiryByKey = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public MissingKeyCache(int maximumSize, Duration timeToLive) {
+        this(maximumSize, timeToLive, System::nanoTime);
+    }
+
+    /*package*/ MissingKeyCache(int maximumSize, Duration timeToLive, LongSupplier nanoClock) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("\"maximumSize\" must be positive, but was: " + maximumSize);
+        }
+        Objects.requireNonNull(timeToLive, "\"timeToLive\" must not be null");
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("\"timeToLive\" must be positive, but was: " + timeToLive);
+        }
+        this.maximumSize = maximumSize;
+        this.timeToLiveNanos = timeToLive.toNanos();
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * @return true, when the key is known to be missing from persistence
+     */
+    boolean isMissing(String key) {
+        final Long expiry = expiryByKey.get(key);
+        if (expiry != null) {
+            if (nanoClock.getAsLong() - expiry < 0) {
+                hits.increment();
+                return true;
+            }
+            expiryByKey.remove(key, expiry);
+        }
+        misses.increment();
+        return false;
+    }
+
+    /**
+     * Remember that persistence has no values for a key.
+     */
+    void add(String key) {
+        expiryByKey.put(key, nanoClock.getAsLong() + timeToLiveNanos);
+        if (expiryByKey.size() > maximumSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Forget that a key is missing, because values for it were set or it was reloaded.
+     */
+    void invalidate(String key) {
+        expiryByKey.remove(key);
+    }
+
+    void invalidateAll() {
+        expiryByKey.clear();
+    }
+
+    /**
+     * Remove expired keys and then the keys expiring first, until the cache is filled to 90% of its maximum size. Only one thread evicts at
+     * a time, other threads will not wait for the eviction to complete.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            final long now = nanoClock.getAsLong();
+            final Iterator<Map.Entry<String, Long>> expired = expiryByKey.entrySet().iterator();
+            while (expired.hasNext()) {
+                if (now - expired.next().getValue() >= 0) {
+                    expired.remove();
+                    evictions.increment();
+                }
+            }
+            final int targetSize = maximumSize - Math.max(1, maximumSize / 10);
+            final int excess = expiryByKey.size() - targetSize;
+            if (excess > 0) {
+                expiryByKey.entrySet().stream()
+                        .sorted(Map.Entry.comparingByValue((expiry, other) -> Long.signum(expiry - other)))
+                        .limit(excess)
+                        .forEach(entry -> {
+                            if (expiryByKey.remove(entry.getKey(), entry.getValue())) {
+                                evictions.increment();
+                            }
+                        });
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    /**
+     * @return number of queries, that did not go to persistence, because the key was known to be missing
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int getSize() {
+        return expiryByKey.size();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    public Duration getTimeToLive() {
+        return Duration.ofNanos(timeToLiveNanos);
+    }
+
+    @Override
+    public String toString() {
+        return "MissingKeyCache{size=" + getSize() + ", maximumSize=" + maximumSize + ", timeToLive=" + getTimeToLive() + ", hits="
+                + getHitCount() + ", misses=" + getMissCount() + ", evictions=" + getEvictionCount() + '}';
+    }
+}
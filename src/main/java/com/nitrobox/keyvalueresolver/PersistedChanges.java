@@ -0,0 +1,85 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The values added, changed and removed in persistence up to a version, see {@link DeltaPersistence#changesSince}. A value is identified
+ * by its key, pattern and change set, like in {@link Persistence#remove(String, DomainSpecificValue)}.
+ * <p>
+ * A value is contained at most once, in the state it has at the version: a value removed and added again is a changed value, a value
+ * added and removed again is a removed value. A value contained in both nevertheless is kept as changed.
+ */
+public final class PersistedChanges {
+
+    private final long version;
+    private final Map<String, Collection<DomainSpecificValue>> changedValues;
+    private final Map<String, Collection<DomainSpecificValue>> removedValues;
+    private final Map<String, String> descriptions;
+
+    /**
+     * @param version       the version of the latest change contained
+     * @param changedValues the values added or changed, by their key
+     * @param removedValues the values removed, by their key
+     * @param descriptions  the descriptions of keys added or with a changed description, by their key
+     */
+    public PersistedChanges(long version, Map<String, Collection<DomainSpecificValue>> changedValues,
+            Map<String, Collection<DomainSpecificValue>> removedValues, Map<String, String> descriptions) {
+        this.version = version;
+        this.changedValues = Objects.requireNonNull(changedValues, "\"changedValues\" must not be null");
+        this.removedValues = Objects.requireNonNull(removedValues, "\"removedValues\" must not be null");
+        this.descriptions = Objects.requireNonNull(descriptions, "\"descriptions\" must not be null");
+    }
+
+    /**
+     * @return changes without any changed values, when nothing changed since a version
+     */
+    public static PersistedChanges none(long version) {
+        return new PersistedChanges(version, Collections.emptyMap(), Collections.emptyMap(), Collections.emptyMap());
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public Map<String, Collection<DomainSpecificValue>> getChangedValues() {
+        return Collections.unmodifiableMap(changedValues);
+    }
+
+    public Map<String, Collection<DomainSpecificValue>> getRemovedValues() {
+        return Collections.unmodifiableMap(removedValues);
+    }
+
+    public Map<String, String> getDescriptions() {
+        return Collections.unmodifiableMap(descriptions);
+    }
+
+    public boolean isEmpty() {
+        return changedValues.isEmpty() && removedValues.isEmpty() && descriptions.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "PersistedChanges{version=" + version + ", keysWithChangedValues=" + changedValues.size() + ", keysWithRemovedValues="
+                + removedValues.size() + '}';
+    }
+}
@@ -20,7 +20,9 @@
  */
 package com.nitrobox.keyvalueresolver;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Map;
 
 
 /**
@@ -42,6 +44,25 @@ public interface Persistence {
      */
     Collection<KeyValues> loadAll(DomainSpecificValueFactory domainSpecificValueFactory);
 
+    /**
+     * Load all overridden values for several keys at once. Is called by KeyValueResolver when several unknown keys are queried together.
+     * Keys without values are left out of the result. Implementations should override this to load all keys in a single round trip, by
+     * default every key is loaded on its own.
+     *
+     * @param keys the keys to load
+     * @return the KeyValues of the keys that have values
+     */
+    default Collection<KeyValues> loadAll(Collection<String> keys, DomainSpecificValueFactory domainSpecificValueFactory) {
+        final Collection<KeyValues> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            final KeyValues keyValues = load(key, domainSpecificValueFactory);
+            if (keyValues != null) {
+                result.add(keyValues);
+            }
+        }
+        return result;
+    }
+
     /**
      * Reload the data from persistence to synchronize changes. Reload may change the existing collection and give back a reference to the
      * same collection passed as a parameter or it might create a new map.
@@ -52,6 +73,19 @@ public interface Persistence {
 
     void store(final String key, final KeyValues keyValues, final DomainSpecificValue domainSpecificValue);
 
+    /**
+     * Store many values at once. Is called by KeyValueResolver for bulk changes with setAll. Implementations should override this to store
+     * all values in a single round trip, by default every value is stored on its own with store, in the order of the map.
+     * <p>
+     * When storing fails, the failure is thrown to the caller of setAll. The values stay set in KeyValueResolver, the values stored
+     * before the failure stay stored by the default, so implementations writing all values in one transaction should roll it back.
+     *
+     * @param domainSpecificValues the values to store, by the KeyValues of their key
+     */
+    default void storeAll(Map<KeyValues, Collection<DomainSpecificValue>> domainSpecificValues) {
+        domainSpecificValues.forEach((keyValues, values) -> values.forEach(value -> store(keyValues.getKey(), keyValues, value)));
+    }
+
     /**
      * Remove a complete key from persistence.
      *
@@ -66,4 +100,15 @@ public interface Persistence {
      * @param domainSpecificValue the DomainSpecificValue to remove
      */
     void remove(String key, DomainSpecificValue domainSpecificValue);
+
+    /**
+     * Remove many DomainSpecificValues at once. Is called by KeyValueResolver for bulk changes with removeAll, the KeyValues hold the
+     * values left. By default every value is removed on its own with remove, in the order of the map. Failures are handled like by
+     * storeAll.
+     *
+     * @param domainSpecificValues the values to remove, by the KeyValues of their key
+     */
+    default void removeAll(Map<KeyValues, Collection<DomainSpecificValue>> domainSpecificValues) {
+        domainSpecificValues.forEach((keyValues, values) -> values.forEach(value -> remove(keyValues.getKey(), value)));
+    }
 }
@@ -21,19 +21,29 @@
 
 package com.nitrobox.keyvalueresolver;
 
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Supplier;
 
+/**
+ * Runs code under the read or write lock of a ReentrantReadWriteLock. Every acquisition is counted, as is every acquisition that could
+ * not get the lock right away and had to wait (contention). Counting does not change the order the lock is granted in: a reader does not
+ * get ahead of a writer already waiting for the lock.
+ */
 public class ReadWriteLockTool {
 
-    private final ReadWriteLock readWriteLock = new ReentrantReadWriteLock();
+    private final ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock();
     private final Lock readLock = readWriteLock.readLock();
     private final Lock writeLock = readWriteLock.writeLock();
+    private final LongAdder readLockCount = new LongAdder();
+    private final LongAdder contendedReadLockCount = new LongAdder();
+    private final LongAdder writeLockCount = new LongAdder();
+    private final LongAdder contendedWriteLockCount = new LongAdder();
 
     public <T> T readLocked(Supplier<T> supplier) {
-        readLock.lock();
+        lock(readLock, readLockCount, contendedReadLockCount);
         try {
             return supplier.get();
         } finally {
@@ -42,7 +52,7 @@ public class ReadWriteLockTool {
     }
 
     public void readLocked(Runnable runnable) {
-        readLock.lock();
+        lock(readLock, readLockCount, contendedReadLockCount);
         try {
             runnable.run();
         } finally {
@@ -51,7 +61,7 @@ public class ReadWriteLockTool {
     }
 
     public <T> T writeLocked(Supplier<T> supplier) {
-        writeLock.lock();
+        lock(writeLock, writeLockCount, contendedWriteLockCount);
         try {
             return supplier.get();
         } finally {
@@ -60,11 +70,58 @@ public class ReadWriteLockTool {
     }
 
     public void writeLocked(Runnable runnable) {
-        writeLock.lock();
+        lock(writeLock, writeLockCount, contendedWriteLockCount);
         try {
             runnable.run();
         } finally {
             writeLock.unlock();
         }
     }
+
+    private static void lock(Lock lock, LongAdder count, LongAdder contendedCount) {
+        count.increment();
+        if (!tryLockInTurn(lock)) {
+            contendedCount.increment();
+            lock.lock();
+        }
+    }
+
+    /**
+     * Unlike tryLock(), that takes a free read lock even when writers are waiting, a timed tryLock only succeeds, when lock() would
+     * succeed right away.
+     */
+    private static boolean tryLockInTurn(Lock lock) {
+        try {
+            return lock.tryLock(0, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // lock() ignores the interrupt, keep it for the caller
+            return false;
+        }
+    }
+
+    /*package*/ boolean hasQueuedThreads() {
+        return readWriteLock.hasQueuedThreads();
+    }
+
+    public long getReadLockCount() {
+        return readLockCount.sum();
+    }
+
+    public long getContendedReadLockCount() {
+        return contendedReadLockCount.sum();
+    }
+
+    public long getWriteLockCount() {
+        return writeLockCount.sum();
+    }
+
+    public long getContendedWriteLockCount() {
+        return contendedWriteLockCount.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "ReadWriteLockTool{readLocks=" + getReadLockCount() + ", contendedReadLocks=" + getContendedReadLockCount()
+                + ", writeLocks=" + getWriteLockCount() + ", contendedWriteLocks=" + getContendedWriteLockCount() + '}';
+    }
 }
@@ -0,0 +1,113 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * The domain values and active change sets of a DomainResolver, resolved once by KeyValueResolverImpl.prepare and reused for any number of
+ * keys. The resolver is not called again, so a context reflects the state of the resolver at the time it was prepared.
+ * <p>
+ * A context is immutable and may be shared between threads. It keeps the domain values encoded and the active change sets as mask, and
+ * only recomputes them for a query, when values with new domain values or change sets were added after the context was prepared.
+ */
+public final class ResolutionContext {
+
+    private final String[] domainValues;
+    private final Collection<String> activeChangeSets;
+    private final DomainValueDictionary dictionary;
+    private final int dictionarySize;
+    private final int[] encodedDomainValues;
+    private final boolean containsUnknownDomainValues;
+    private final ChangeSetRegistry changeSetRegistry;
+    private final int changeSetRegistrySize;
+    private final long activeChangeSetMask;
+
+    ResolutionContext(List<String> domains, DomainResolver resolver, DomainValueDictionary dictionary,
+            ChangeSetRegistry changeSetRegistry) {
+        if (resolver == null && !domains.isEmpty()) {
+            throw new IllegalArgumentException("If a domain is specified, the domain resolver must not be null");
+        }
+        this.domainValues = new String[domains.size()];
+        for (int i = 0; i < domainValues.length; i++) {
+            domainValues[i] = DomainValuesBuffer.resolveDomainValue(resolver, domains.get(i));
+        }
+        this.activeChangeSets = resolver == null ? null : Collections.unmodifiableSet(new HashSet<>(KeyValues.activeChangeSets(resolver)));
+        this.dictionary = dictionary;
+        this.dictionarySize = dictionary.size(); // read before encoding, so values added during encoding are noticed later
+        this.encodedDomainValues = encode(dictionary);
+        this.containsUnknownDomainValues = Arrays.stream(encodedDomainValues).anyMatch(id -> id == DomainValueDictionary.UNKNOWN);
+        this.changeSetRegistry = changeSetRegistry;
+        this.changeSetRegistrySize = changeSetRegistry.size();
+        this.activeChangeSetMask = maskOf(changeSetRegistry);
+    }
+
+    private int[] encode(DomainValueDictionary dictionary) {
+        final int[] result = new int[domainValues.length];
+        for (int i = 0; i < domainValues.length; i++) {
+            result[i] = dictionary.lookup(domainValues[i]);
+        }
+        return result;
+    }
+
+    private long maskOf(ChangeSetRegistry registry) {
+        return activeChangeSets == null ? -1L : registry.maskOf(activeChangeSets);
+    }
+
+    String[] getDomainValues() {
+        return domainValues;
+    }
+
+    int getLength() {
+        return domainValues.length;
+    }
+
+    /**
+     * @return the active change sets or null, when all change sets are active
+     */
+    Collection<String> getActiveChangeSets() {
+        return activeChangeSets;
+    }
+
+    /**
+     * Get the domain values encoded with the given dictionary. Domain values unknown when the context was prepared may have become known
+     * since, in that case they are encoded again.
+     */
+    int[] getEncodedDomainValues(DomainValueDictionary currentDictionary) {
+        if (currentDictionary == dictionary && (!containsUnknownDomainValues || currentDictionary.size() == dictionarySize)) {
+            return encodedDomainValues;
+        }
+        return encode(currentDictionary);
+    }
+
+    long getActiveChangeSetMask(ChangeSetRegistry currentRegistry) {
+        if (currentRegistry == changeSetRegistry && currentRegistry.size() == changeSetRegistrySize) {
+            return activeChangeSetMask;
+        }
+        return maskOf(currentRegistry);
+    }
+
+    @Override
+    public String toString() {
+        return "ResolutionContext{domainValues=" + Arrays.toString(domainValues) + ", activeChangeSets=" + activeChangeSets + '}';
+    }
+}
@@ -0,0 +1,334 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Opt-in cache for resolved values, keyed by the key, the resolved domain values and the active change sets. Set it on a
+ * KeyValueResolverImpl to use it.
+ * <p>
+ * The cache is bounded. When it is full, the least frequently hit entries are evicted and the hit counts of the remaining entries are
+ * halved, so entries that were popular a long time ago age out. Entries are invalidated by the ValuesStore whenever the values of a key
+ * change. In addition every entry remembers the version of the KeyValues it was resolved from and is ignored, when that does not match
+ * anymore, so a value resolved concurrently to a change is never served.
+ */
+public class ResolvedValueCache {
+
+    private static final int MAX_FREQUENCY = 0xFFFF;
+    private static final ThreadLocal<CacheKey> PROBE = ThreadLocal.withInitial(CacheKey::new);
+
+    private final int maximumSize;
+    private final Map<String, Map<CacheKey, Entry>> entriesByKey = new ConcurrentHashMap<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ResolvedValueCache(int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("\"maximumSize\" must be positive, but was: " + maximumSize);
+        }
+        this.maximumSize = maximumSize;
+    }
+
+    <T> T get(String key, KeyValues keyValues, ResolutionContext context, T defaultValue) {
+        final DomainSpecificValue domainSpecificValue = find(key, keyValues, context);
+        return DomainSpecificValue.valueOrDefault(domainSpecificValue, defaultValue);
+    }
+
+    /**
+     * Find the DomainSpecificValue with the highest precedence, either cached or resolved by keyValues.
+     *
+     * @return the DomainSpecificValue or null, when no value matches
+     */
+    DomainSpecificValue find(String key, KeyValues keyValues, Iterable<String> domains, DomainResolver resolver) {
+        if (resolver == null || keyValues.isEmpty()) {
+            return keyValues.find(domains, resolver);
+        }
+        final DomainValuesBuffer buffer = DomainValuesBuffer.acquire();
+        try {
+            buffer.resolve(domains, resolver);
+            final Collection<String> activeChangeSets = KeyValues.activeChangeSets(resolver);
+            final Entry entry = lookup(key, keyValues, buffer.values(), buffer.length(), activeChangeSets);
+            if (entry != null) {
+                return entry.domainSpecificValue;
+            }
+            final int version = keyValues.getVersion();
+            return store(key, keyValues, version, keyValues.find(buffer, resolver, activeChangeSets), buffer.values(), buffer.length(),
+                    activeChangeSets);
+        } finally {
+            buffer.release();
+        }
+    }
+
+    DomainSpecificValue find(String key, KeyValues keyValues, ResolutionContext context) {
+        final Collection<String> activeChangeSets = context.getActiveChangeSets();
+        if (activeChangeSets == null || keyValues.isEmpty()) {
+            return keyValues.find(context);
+        }
+        final Entry entry = lookup(key, keyValues, context.getDomainValues(), context.getLength(), activeChangeSets);
+        if (entry != null) {
+            return entry.domainSpecificValue;
+        }
+        final int version = keyValues.getVersion();
+        return store(key, keyValues, version, keyValues.find(context), context.getDomainValues(), context.getLength(), activeChangeSets);
+    }
+
+    /**
+     * @return the valid entry or null on a cache miss
+     */
+    private Entry lookup(String key, KeyValues keyValues, String[] domainValues, int length, Collection<String> activeChangeSets) {
+        final Map<CacheKey, Entry> entries = entriesByKey.get(key);
+        if (entries != null) {
+            final CacheKey probe = PROBE.get().set(domainValues, length, activeChangeSets);
+            final Entry entry = entries.get(probe);
+            probe.clear();
+            if (entry != null && entry.isValidFor(keyValues)) {
+                entry.hit();
+                hits.increment();
+                return entry;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * @param version version of keyValues read before domainSpecificValue was resolved
+     */
+    private DomainSpecificValue store(String key, KeyValues keyValues, int version, DomainSpecificValue domainSpecificValue,
+            String[] domainValues, int length, Collection<String> activeChangeSets) {
+        put(key, new CacheKey(domainValues, length, activeChangeSets), new Entry(keyValues, version, domainSpecificValue));
+        return domainSpecificValue;
+    }
+
+    private void put(String key, CacheKey cacheKey, Entry entry) {
+        entriesByKey.compute(key, (k, entries) -> {
+            final Map<CacheKey, Entry> result = entries == null ? new ConcurrentHashMap<>() : entries;
+            if (result.put(cacheKey, entry) == null) {
+                size.incrementAndGet();
+            }
+            return result;
+        });
+        if (size.get() > maximumSize) {
+            evict();
+        }
+    }
+
+    /**
+     * Remove all cached values of a key.
+     */
+    void invalidate(String key) {
+        entriesByKey.computeIfPresent(key, (k, entries) -> {
+            size.addAndGet(-entries.size());
+            return null;
+        });
+    }
+
+    void invalidateAll() {
+        for (String key : entriesByKey.keySet()) {
+            invalidate(key);
+        }
+    }
+
+    /**
+     * Evict the least frequently hit entries, until the cache is filled to 90% of its maximum size. Only one thread evicts at a time,
+     * other threads will not wait for the eviction to complete.
+     */
+    private void evict() {
+        if (!evictionLock.tryLock()) {
+            return;
+        }
+        try {
+            final int targetSize = maximumSize - Math.max(1, maximumSize / 10);
+            for (int threshold = 0; size.get() > targetSize && threshold <= MAX_FREQUENCY; threshold = threshold * 2 + 1) {
+                evictEntriesHitAtMost(threshold, targetSize);
+            }
+            for (Map<CacheKey, Entry> entries : entriesByKey.values()) {
+                for (Entry entry : entries.values()) {
+                    entry.age();
+                }
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    private void evictEntriesHitAtMost(int threshold, int targetSize) {
+        for (Map.Entry<String, Map<CacheKey, Entry>> entriesOfKey : entriesByKey.entrySet()) {
+            for (Map.Entry<CacheKey, Entry> entry : entriesOfKey.getValue().entrySet()) {
+                if (size.get() <= targetSize) {
+                    return;
+                }
+                if (entry.getValue().frequency <= threshold) {
+                    remove(entriesOfKey.getKey(), entry.getKey(), entry.getValue());
+                }
+            }
+        }
+    }
+
+    private void remove(String key, CacheKey cacheKey, Entry entry) {
+        entriesByKey.computeIfPresent(key, (k, entries) -> {
+            if (entries.remove(cacheKey, entry)) {
+                size.decrementAndGet();
+                evictions.increment();
+            }
+            return entries.isEmpty() ? null : entries;
+        });
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int getSize() {
+        return size.get();
+    }
+
+    public int getMaximumSize() {
+        return maximumSize;
+    }
+
+    @Override
+    public String toString() {
+        return "ResolvedValueCache{size=" + getSize() + ", maximumSize=" + maximumSize + ", hits=" + getHitCount() + ", misses="
+                + getMissCount() + ", evictions=" + getEvictionCount() + '}';
+    }
+
+    private static final class Entry {
+
+        private final KeyValues keyValues;
+        private final int version;
+        private final DomainSpecificValue domainSpecificValue; // null, when no value matches
+        private int frequency; // updated without synchronization, lost updates only make the count less accurate
+
+        private Entry(KeyValues keyValues, int version, DomainSpecificValue domainSpecificValue) {
+            this.keyValues = keyValues;
+            this.version = version;
+            this.domainSpecificValue = domainSpecificValue;
+        }
+
+        private boolean isValidFor(KeyValues currentKeyValues) {
+            return keyValues == currentKeyValues && version == currentKeyValues.getVersion();
+        }
+
+        private void hit() {
+            if (frequency < MAX_FREQUENCY) {
+                frequency++;
+            }
+        }
+
+        private void age() {
+            frequency >>= 1;
+        }
+    }
+
+    /**
+     * The domain values and active change sets of a query. Stored keys are immutable copies, lookups use a reusable per-thread probe to
+     * avoid allocation on cache hits.
+     */
+    private static final class CacheKey {
+
+        private String[] domainValues;
+        private int length;
+        private Collection<String> changeSets;
+        private int hash;
+
+        private CacheKey() {
+        }
+
+        private CacheKey(String[] domainValues, int length, Collection<String> changeSets) {
+            this.domainValues = Arrays.copyOf(domainValues, length);
+            this.length = length;
+            this.changeSets = changeSets.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(new HashSet<>(changeSets));
+            this.hash = hash();
+        }
+
+        private CacheKey set(String[] domainValues, int length, Collection<String> changeSets) {
+            this.domainValues = domainValues;
+            this.length = length;
+            // change sets are compared as sets, a resolver may give them in a List with duplicates
+            this.changeSets = changeSets instanceof Set ? changeSets : new HashSet<>(changeSets);
+            this.hash = hash();
+            return this;
+        }
+
+        private void clear() {
+            domainValues = null;
+            changeSets = null;
+        }
+
+        private int hash() {
+            int result = 1;
+            for (int i = 0; i < length; i++) {
+                result = 31 * result + domainValues[i].hashCode();
+            }
+            int changeSetsHash = 0;
+            if (!changeSets.isEmpty()) {
+                for (String changeSet : changeSets) {
+                    changeSetsHash += changeSet.hashCode();
+                }
+            }
+            return 31 * result + changeSetsHash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof CacheKey)) {
+                return false;
+            }
+            CacheKey other = (CacheKey) o;
+            if (hash != other.hash || length != other.length || changeSets.size() != other.changeSets.size()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if (!domainValues[i].equals(other.domainValues[i])) {
+                    return false;
+                }
+            }
+            return changeSets.isEmpty() || (changeSets.containsAll(other.changeSets) && other.changeSets.containsAll(changeSets));
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
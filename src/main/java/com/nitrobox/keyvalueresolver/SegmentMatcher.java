@@ -0,0 +1,135 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+/**
+ * Matches patterns like "*|CH|*|3|" against domain values without using regular expressions. Matching compares the pattern segment by
+ * segment in place and does not allocate.
+ * <p>
+ * A segment "*" matches any domain value, a segment containing '*' somewhere else matches like a glob within that single domain value.
+ * As with all patterns, domain values following the last segment of the pattern are ignored.
+ */
+public class SegmentMatcher implements Matcher {
+
+    private static final char SEPARATOR = '|';
+    private static final char WILDCARD = '*';
+
+    private final String pattern;
+    private final boolean containsGlobs;
+
+    public SegmentMatcher(final String pattern) {
+        this.pattern = pattern;
+        this.containsGlobs = containsGlobs(pattern);
+    }
+
+    static boolean containsGlobs(final String pattern) {
+        int start = 0;
+        int end;
+        while ((end = pattern.indexOf(SEPARATOR, start)) >= 0) {
+            final int wildcard = pattern.indexOf(WILDCARD, start);
+            if (wildcard >= 0 && wildcard < end && end - start > 1) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    @Override
+    public boolean matches(final String domainString) {
+        int patternPosition = 0;
+        int domainPosition = 0;
+        int patternEnd;
+        while ((patternEnd = pattern.indexOf(SEPARATOR, patternPosition)) >= 0) {
+            final int domainEnd = domainString.indexOf(SEPARATOR, domainPosition);
+            if (domainEnd < 0) {
+                return false;
+            }
+            if (!segmentMatches(patternPosition, patternEnd, domainString, domainPosition, domainEnd)) {
+                return false;
+            }
+            patternPosition = patternEnd + 1;
+            domainPosition = domainEnd + 1;
+        }
+        return true;
+    }
+
+    /**
+     * Match against already resolved domain values. Null domain values are treated like the empty string.
+     *
+     * @param domainValues the domain values in the order of the domains
+     * @param length       number of valid entries in domainValues
+     */
+    @Override
+    public boolean matches(final String[] domainValues, final int length) {
+        int patternPosition = 0;
+        int index = 0;
+        int patternEnd;
+        while ((patternEnd = pattern.indexOf(SEPARATOR, patternPosition)) >= 0) {
+            if (index >= length) {
+                return false;
+            }
+            final String domainValue = domainValues[index] == null ? "" : domainValues[index];
+            if (!segmentMatches(patternPosition, patternEnd, domainValue, 0, domainValue.length())) {
+                return false;
+            }
+            patternPosition = patternEnd + 1;
+            index++;
+        }
+        return true;
+    }
+
+    private boolean segmentMatches(final int start, final int end, final String domain, final int domainStart, final int domainEnd) {
+        final int segmentLength = end - start;
+        if (segmentLength == 1 && pattern.charAt(start) == WILDCARD) {
+            return true;
+        }
+        if (containsGlobs) {
+            return globMatches(start, end, domain, domainStart, domainEnd);
+        }
+        return segmentLength == domainEnd - domainStart && pattern.regionMatches(start, domain, domainStart, segmentLength);
+    }
+
+    /**
+     * Iterative glob matching with backtracking to the last seen wildcard. '*' matches any (possibly empty) sequence of characters.
+     */
+    private boolean globMatches(final int start, final int end, final String str, final int strStart, final int strEnd) {
+        int p = start;
+        int s = strStart;
+        int lastWildcard = -1;
+        int lastWildcardMatch = strStart;
+        while (s < strEnd) {
+            if (p < end && pattern.charAt(p) == WILDCARD) {
+                lastWildcard = p++;
+                lastWildcardMatch = s;
+            } else if (p < end && pattern.charAt(p) == str.charAt(s)) {
+                p++;
+                s++;
+            } else if (lastWildcard >= 0) {
+                p = lastWildcard + 1;
+                s = ++lastWildcardMatch;
+            } else {
+                return false;
+            }
+        }
+        while (p < end && pattern.charAt(p) == WILDCARD) {
+            p++;
+        }
+        return p == end;
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A Persistence that gives all its values as a stream, so the initial load of KeyValueResolver does not hold all values in a collection
+ * besides the store. The values are added to the store as they are streamed, on several threads, when the load parallelism is larger
+ * than one. Build the KeyValues in a step of the stream, e.g. in a map from the rows read, to build them on several threads as well.
+ */
+public interface StreamingPersistence extends Persistence {
+
+    /**
+     * Stream all values persisted. Is called by KeyValueResolver when it is started, instead of loadAll. The stream is closed after it
+     * is consumed, so it may hold resources like a database cursor. Every key must occur only once in the stream.
+     */
+    Stream<KeyValues> streamAll(DomainSpecificValueFactory domainSpecificValueFactory);
+
+    /**
+     * @return the expected number of keys streamed by streamAll, to size the store up front, or a negative number when unknown
+     */
+    default long sizeHint() {
+        return -1;
+    }
+
+    /**
+     * @return the number of threads to consume the stream of streamAll with, 1 to consume it on the thread starting KeyValueResolver
+     */
+    default int getLoadParallelism() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    @Override
+    default Collection<KeyValues> loadAll(DomainSpecificValueFactory domainSpecificValueFactory) {
+        try (Stream<KeyValues> values = streamAll(domainSpecificValueFactory)) {
+            return values.collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * A fixed number of locks, each key is mapped to one of them. Work on the same key is serialized, work on keys mapped to different locks
+ * runs in parallel. The locks are reentrant.
+ */
+class StripedLockTool {
+
+    private final ReentrantLock[] locks;
+
+    /**
+     * @param stripes number of locks, rounded up to a power of two
+     */
+    StripedLockTool(int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("\"stripes\" must be positive, but was: " + stripes);
+        }
+        final int size = Integer.highestOneBit(stripes - 1) << 1;
+        locks = new ReentrantLock[Math.max(1, size)];
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    private ReentrantLock lockFor(String key) {
+        final int hash = key.hashCode();
+        return locks[(hash ^ (hash >>> 16)) & (locks.length - 1)];
+    }
+
+    <T> T locked(String key, Supplier<T> supplier) {
+        final ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            return supplier.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void locked(String key, Runnable runnable) {
+        final ReentrantLock lock = lockFor(key);
+        lock.lock();
+        try {
+            runnable.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
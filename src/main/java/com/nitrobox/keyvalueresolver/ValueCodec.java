@@ -2,10 +2,6 @@
  * KeyValueResolver - An dynamic Key-Value Store
  * Copyright (C) 2022 Nitrobox GmbH
  *
- * This Software is a fork of Roperty - An advanced property
- * management and retrival system
- * Copyright (C) 2013 PARSHIP GmbH
- *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
  * You may obtain a copy of the License at
@@ -21,23 +17,20 @@
 
 package com.nitrobox.keyvalueresolver;
 
-import java.util.regex.Pattern;
-
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 
 /**
- * @author finsterwalder
- * @since 2013-09-13 10:49
+ * Writes values to and reads them from a snapshot, see {@link KeyValuesSnapshot}. Implement it for values of types the
+ * {@link DefaultValueCodec} does not know, e.g. by extending it.
  */
-public class RegexMatcher implements Matcher {
-
-    private final Pattern pattern;
+public interface ValueCodec {
 
-    public RegexMatcher(final String regex) {
-        this.pattern = Pattern.compile(regex);
-    }
+    /**
+     * @throws IllegalArgumentException when the type of the value is not supported
+     */
+    void write(Object value, DataOutput out) throws IOException;
 
-    @Override
-    public boolean matches(String domainString) {
-        return pattern.matcher(domainString).matches();
-    }
+    Object read(DataInput in) throws IOException;
 }
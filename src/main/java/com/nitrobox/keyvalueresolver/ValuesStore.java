@@ -23,56 +23,320 @@ package com.nitrobox.keyvalueresolver;
 
 import static com.nitrobox.keyvalueresolver.KeyValueResolverImpl.resolverFor;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * The internal in memory storage for KeyValueResolver KeyValues
+ * <p>
+ * Reads take no locks: the KeyValues are kept in a concurrent map, that setAllValues builds completely off to the side and then swaps in
+ * as a whole, so readers see either all old or all new values and never wait for the new ones. Writes of a single key are serialized by
+ * a striped lock and share the global lock, so writes of different keys run in parallel. Only operations on the whole store, like the
+ * swap of setAllValues and removeChangeSet, take the global lock exclusively.
+ * <p>
+ * The KeyValues are kept on the heap, unless a {@link MappedKeyValuesFile} is opened with openMapped. Then they stay in the file and are
+ * decoded on access, only keys changed afterwards are kept on the heap.
  */
 public class ValuesStore {
 
-    private final Map<String, KeyValues> keyValuesMap = new HashMap<>();
-    private final ReadWriteLockTool lock = new ReadWriteLockTool();
+    private volatile KeyValuesMap keyValuesMap = new HeapKeyValuesMap(16);
+    private static final int KEY_LOCK_STRIPES = 64;
+    private static final long UNKNOWN_VERSION = DeltaPersistence.UNKNOWN_VERSION;
+    public static final int DEFAULT_ASYNC_THREADS = 8;
+    private final ReadWriteLockTool lock = new ReadWriteLockTool(); // shared by writes of single keys, exclusive for the whole store
+    private final StripedLockTool keyLocks = new StripedLockTool(KEY_LOCK_STRIPES);
     private DomainSpecificValueFactory domainSpecificValueFactory;
     private Persistence persistence;
+    private volatile AsyncPersistence asyncPersistence;
+    private ResolvedValueCache resolvedValueCache;
+    private volatile MissingKeyCache missingKeyCache;
+    private final Map<String, CompletableFuture<KeyValues>> inFlightLoads = new ConcurrentHashMap<>();
+    private volatile LoadBatching loadBatching;
+    private final Object batchLock = new Object();
+    private Map<String, CompletableFuture<KeyValues>> openBatch; // guarded by batchLock
+    private volatile DomainValueDictionary domainValueDictionary = new DomainValueDictionary();
+    private volatile ChangeSetRegistry changeSetRegistry = new ChangeSetRegistry();
+    private final Object reloadLock = new Object();
+    private volatile long changesVersion = UNKNOWN_VERSION; // version of DeltaPersistence the values are up to date with
+    private final ChangeNotifier changeNotifier = new ChangeNotifier();
+    private final Map<String, CompletableFuture<Void>> asyncWrites = new ConcurrentHashMap<>(); // the last async write of a key
+    private final Object asyncExecutorLock = new Object();
+    private volatile Executor asyncExecutor;
+    private ExecutorService defaultAsyncExecutor; // guarded by asyncExecutorLock
 
     public Collection<KeyValues> getAllValues() {
-        return lock.readLocked(() -> Collections.unmodifiableCollection(keyValuesMap.values()));
+        return Collections.unmodifiableCollection(keyValuesMap.values());
     }
 
     public Collection<KeyValues> getAllValues(List<String> domains, DomainResolver... resolver) {
-        return lock.readLocked(() -> keyValuesMap.values().stream()
+        return keyValuesMap.values().stream()
                 .map(keyValues -> keyValues.copy(domains, resolver))
                 .filter(keyValues -> !keyValues.isEmpty())
-                .collect(Collectors.toUnmodifiableList()));
+                .collect(Collectors.toUnmodifiableList());
     }
 
+    /**
+     * Replace all values. The new values are added to a new map without holding any lock, that is then swapped in. Writes made to the
+     * replaced values while the new map is built are lost, unless the new values contain them.
+     */
     public void setAllValues(Collection<? extends KeyValues> values) {
+        // start over with the domain values and change sets, so those no longer used are dropped and give their ids back
+        final DomainValueDictionary newDictionary = new DomainValueDictionary();
+        final ChangeSetRegistry newChangeSetRegistry = new ChangeSetRegistry();
+        final KeyValuesMap newKeyValuesMap = new HeapKeyValuesMap(values.size());
+        values.forEach(kv -> newKeyValuesMap.put(kv.getKey(), attach(kv, newDictionary, newChangeSetRegistry)));
+        swap(newKeyValuesMap, newDictionary, newChangeSetRegistry);
+    }
+
+    /**
+     * Replace all values with the values of a stream, adding them as they are streamed instead of collecting them first. With a
+     * parallelism larger than one, the stream is consumed in parallel by a pool of that many threads, that is shut down afterwards. The
+     * threads also build the index of every key, encoding its patterns, which is otherwise done by the first resolution of the key.
+     *
+     * @param expectedSize number of values expected, to size the store up front, negative when unknown
+     */
+    public void setAllValues(Stream<? extends KeyValues> values, long expectedSize, int parallelism) {
+        if (parallelism <= 0) {
+            throw new IllegalArgumentException("\"parallelism\" must be positive, but was: " + parallelism);
+        }
+        final DomainValueDictionary newDictionary = new DomainValueDictionary();
+        final ChangeSetRegistry newChangeSetRegistry = new ChangeSetRegistry();
+        final KeyValuesMap newKeyValuesMap = new HeapKeyValuesMap((int) Math.min(expectedSize, 1 << 29));
+        final Consumer<KeyValues> add = kv -> newKeyValuesMap.put(kv.getKey(), attach(kv, newDictionary, newChangeSetRegistry));
+        if (parallelism == 1) {
+            values.sequential().forEach(add);
+        } else {
+            final ForkJoinPool pool = new ForkJoinPool(parallelism);
+            try {
+                // a parallel stream runs in the pool it is started in
+                pool.submit(() -> values.parallel().forEach(add.andThen(KeyValues::buildIndex))).join();
+            } finally {
+                pool.shutdown();
+            }
+        }
+        swap(newKeyValuesMap, newDictionary, newChangeSetRegistry);
+    }
+
+    /**
+     * Publish a completely built map. The write lock only waits for writes in progress, reads of known keys never take it.
+     */
+    private void swap(final KeyValuesMap newKeyValuesMap, final DomainValueDictionary newDictionary,
+            final ChangeSetRegistry newChangeSetRegistry) {
         lock.writeLocked(() -> {
-            keyValuesMap.clear();
-            values.forEach(kv -> keyValuesMap.put(kv.getKey(), kv));
+            domainValueDictionary = newDictionary;
+            changeSetRegistry = newChangeSetRegistry;
+            changesVersion = UNKNOWN_VERSION;
+            keyValuesMap = newKeyValuesMap;
+            invalidateAllResolvedValues();
+            invalidateAllMissingKeys();
         });
     }
 
+    /**
+     * Replace all values with the values persisted, streaming them, when the persistence is a StreamingPersistence.
+     */
+    public void loadAll() {
+        final long version = currentVersion();
+        if (persistence instanceof StreamingPersistence) {
+            final StreamingPersistence streamingPersistence = (StreamingPersistence) persistence;
+            try (Stream<KeyValues> values = streamingPersistence.streamAll(domainSpecificValueFactory)) {
+                setAllValues(values, streamingPersistence.sizeHint(), streamingPersistence.getLoadParallelism());
+            }
+        } else if (persistence != null) {
+            setAllValues(persistence.loadAll(domainSpecificValueFactory));
+        }
+        changesVersion = version;
+    }
+
+    /**
+     * @return the current version of a DeltaPersistence, read before loading values, so the changes made during the load are applied by
+     * the next reload
+     */
+    private long currentVersion() {
+        return persistence instanceof DeltaPersistence ? ((DeltaPersistence) persistence).currentVersion() : UNKNOWN_VERSION;
+    }
+
     public void setWithChangeSet(String key, String description, String changeSet, final Object value, final String... domainValues) {
-        lock.writeLocked(() -> {
-            KeyValues keyValues = getOrCreateKeyValues(key, description);
-            final DomainSpecificValue domainSpecificValue = keyValues.putWithChangeSet(changeSet, value, domainValues);
+        loadForWrite(key);
+        keyLocked(key, () -> {
+            final KeyValues keyValues = keyValuesMap.computeIfAbsent(key,
+                    k -> attach(new KeyValues(key, domainSpecificValueFactory, description)));
+            final List<ChangeEvent> events = changeNotifier.newEvents();
+            final DomainSpecificValue domainSpecificValue = keyValues.putWithChangeSet(changeSet, value, domainValues, events);
+            keyValuesMap.changed(keyValues);
+            invalidateResolvedValues(key);
+            invalidateMissingKey(key);
+            changeNotifier.publish(events); // before storing, so listeners hear about the change in memory, even when storing fails
             store(key, keyValues, domainSpecificValue);
         });
     }
 
+    /**
+     * Set many values at once. Keys not yet known are loaded from persistence together, then all values are set taking the lock once.
+     * The values are stored with a single call to Persistence.storeAll after the lock is released, so a write of one of the keys meanwhile
+     * may reach persistence first.
+     */
+    public void setAll(final Collection<KeyValueEntry> entries) {
+        final Set<String> keys = keysOf(entries);
+        keys.forEach(this::invalidateMissingKey);
+        getKeyValuesFromMapOrPersistence(keys);
+        final Map<KeyValues, Collection<DomainSpecificValue>> changedValues = new HashMap<>(keys.size() * 4 / 3 + 1); // by identity
+        final List<ChangeEvent> events = changeNotifier.newEvents();
+        lock.writeLocked(() -> {
+            for (KeyValueEntry entry : entries) {
+                final KeyValues keyValues = keyValuesMap.computeIfAbsent(entry.getKey(),
+                        key -> attach(new KeyValues(key, domainSpecificValueFactory, entry.getDescription())));
+                changedValues.computeIfAbsent(keyValues, k -> new ArrayList<>()).add(keyValues.putWithChangeSet(entry.getChangeSet(),
+                        entry.getValue(), entry.getDomainValues(), events));
+            }
+            changedValues.keySet().forEach(keyValuesMap::changed);
+            for (String key : keys) {
+                invalidateResolvedValues(key);
+                invalidateMissingKey(key);
+            }
+            changeNotifier.publish(events);
+        });
+        if (persistence != null && !changedValues.isEmpty()) {
+            persistence.storeAll(changedValues);
+        }
+    }
+
+    /**
+     * Remove many values at once, taking the lock once. The values are removed from persistence with a single call to
+     * Persistence.removeAll after the lock is released. Keys without values left are removed completely.
+     */
+    public void removeAll(final Collection<KeyValueEntry> entries) {
+        getKeyValuesFromMapOrPersistence(keysOf(entries));
+        final Map<KeyValues, Collection<DomainSpecificValue>> removedValues = new HashMap<>(); // by identity
+        final Set<String> emptyKeys = new HashSet<>();
+        final List<ChangeEvent> events = changeNotifier.newEvents();
+        lock.writeLocked(() -> {
+            for (KeyValueEntry entry : entries) {
+                final KeyValues keyValues = keyValuesMap.get(entry.getKey());
+                if (keyValues == null) {
+                    continue;
+                }
+                final DomainSpecificValue removed = keyValues.remove(entry.getChangeSet(), entry.getDomainValues());
+                if (removed != null) {
+                    removedValues.computeIfAbsent(keyValues, k -> new ArrayList<>()).add(removed);
+                    addRemoved(entry.getKey(), removed, events);
+                    invalidateResolvedValues(entry.getKey());
+                }
+                if (keyValues.isEmpty()) {
+                    keyValuesMap.remove(entry.getKey());
+                    emptyKeys.add(entry.getKey());
+                } else if (removed != null) {
+                    keyValuesMap.changed(keyValues);
+                }
+            }
+            changeNotifier.publish(events);
+        });
+        if (persistence != null) {
+            if (!removedValues.isEmpty()) {
+                persistence.removeAll(removedValues);
+            }
+            emptyKeys.forEach(persistence::remove);
+        }
+    }
+
+    private static Set<String> keysOf(final Collection<KeyValueEntry> entries) {
+        final Set<String> keys = new HashSet<>(entries.size() * 4 / 3 + 1);
+        for (KeyValueEntry entry : entries) {
+            keys.add(entry.getKey());
+        }
+        return keys;
+    }
+
+    /**
+     * Set a value without blocking the caller. The value is set on the async executor, where it may wait for a write of the same key, and
+     * is visible in memory, before it is stored. Stores of the same key are started in the order the values are set.
+     *
+     * @return a future completed with the value set, when it is stored
+     */
+    public CompletableFuture<DomainSpecificValue> setWithChangeSetAsync(String key, String description, String changeSet,
+            final Object value, final String... domainValues) {
+        invalidateMissingKey(key);
+        return keyLockedAsync(key, getKeyValuesFromMapOrPersistenceAsync(key), () -> {
+            final KeyValues keyValues = keyValuesMap.computeIfAbsent(key,
+                    k -> attach(new KeyValues(key, domainSpecificValueFactory, description)));
+            final List<ChangeEvent> events = changeNotifier.newEvents();
+            final DomainSpecificValue domainSpecificValue = keyValues.putWithChangeSet(changeSet, value, domainValues, events);
+            invalidateResolvedValues(key);
+            invalidateMissingKey(key);
+            changeNotifier.publish(events);
+            return storeAsync(key, keyValues, domainSpecificValue).thenApply(stored -> domainSpecificValue);
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Run a write of a single key on the async executor, once the given future is completed and the async writes of the key started
+     * before have run. The caller does not wait for the lock of the key, that a write may hold while it stores to persistence.
+     *
+     * @param ready a future to wait for, a failure of it fails the write
+     */
+    private <T> CompletableFuture<T> keyLockedAsync(final String key, final CompletableFuture<?> ready, final Supplier<T> write) {
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+        final CompletableFuture<Void> previous = asyncWrites.put(key, done);
+        final CompletableFuture<?> start = previous == null ? ready : CompletableFuture.allOf(previous, ready);
+        return start.thenApplyAsync(ignored -> lock.readLocked(() -> keyLocks.locked(key, write)), getAsyncExecutor())
+                .whenComplete((result, e) -> {
+                    asyncWrites.remove(key, done);
+                    done.complete(null);
+                });
+    }
+
+    /**
+     * Run a write of a single key. Writes of the same key are serialized, writes of other keys may run at the same time.
+     */
+    private void keyLocked(String key, Runnable runnable) {
+        lock.readLocked(() -> keyLocks.locked(key, runnable));
+    }
+
+    /**
+     * Load a key before a write of it takes the locks. A load may wait for the window of a batch, that would otherwise hold up writes of
+     * all keys on the same stripe.
+     */
+    private void loadForWrite(final String key) {
+        invalidateMissingKey(key); // a write always looks into persistence, so it does not hide values persisted in the meantime
+        getKeyValuesFromMapOrPersistence(key);
+    }
+
     /*package*/ KeyValues getOrCreateKeyValues(final String key, final String description) {
+        invalidateMissingKey(key);
         KeyValues keyValues = getKeyValuesFromMapOrPersistence(key);
         if (keyValues != null) {
             return keyValues;
         }
-        return lock.writeLocked(() -> keyValuesMap.computeIfAbsent(key, k -> new KeyValues(key, domainSpecificValueFactory, description)));
+        return lock.readLocked(() -> keyValuesMap.computeIfAbsent(key,
+                k -> attach(new KeyValues(key, domainSpecificValueFactory, description))));
     }
 
     private void store(final String key, final KeyValues keyValues, DomainSpecificValue domainSpecificValue) {
@@ -81,8 +345,163 @@ public class ValuesStore {
         }
     }
 
+    private CompletableFuture<Void> storeAsync(final String key, final KeyValues keyValues, DomainSpecificValue domainSpecificValue) {
+        final AsyncPersistence currentAsyncPersistence = getAsyncPersistence();
+        if (currentAsyncPersistence == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return start(() -> currentAsyncPersistence.store(key, keyValues, domainSpecificValue));
+    }
+
     public KeyValues getKeyValuesFromMapOrPersistence(final String key) {
-        final KeyValues keyValues = lock.readLocked(() -> keyValuesMap.get(key));
+        final KeyValues keyValues = keyValuesMap.get(key);
+        if (keyValues != null || persistence == null) {
+            return keyValues;
+        }
+        final CompletableFuture<KeyValues> load = new CompletableFuture<>();
+        final CompletableFuture<KeyValues> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+        if (inFlightLoad != null) {
+            return await(inFlightLoad);
+        }
+        final LoadBatching currentLoadBatching = loadBatching;
+        if (currentLoadBatching != null) {
+            loadBatched(key, load, currentLoadBatching);
+            return await(load);
+        }
+        try {
+            final KeyValues loadedKeyValues = loadAndAdd(key);
+            load.complete(loadedKeyValues);
+            return loadedKeyValues;
+        } catch (RuntimeException | Error e) {
+            load.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlightLoads.remove(key, load);
+        }
+    }
+
+    /**
+     * Get the KeyValues of a key without blocking the caller. A key not yet known is loaded with the async persistence, concurrent loads
+     * of the same key, async or not, are shared.
+     *
+     * @return a future completed with the KeyValues or with null, when the key has no values
+     */
+    public CompletableFuture<KeyValues> getKeyValuesFromMapOrPersistenceAsync(final String key) {
+        final KeyValues keyValues = keyValuesMap.get(key);
+        final AsyncPersistence currentAsyncPersistence = getAsyncPersistence();
+        if (keyValues != null || currentAsyncPersistence == null) {
+            return CompletableFuture.completedFuture(keyValues);
+        }
+        final CompletableFuture<KeyValues> load = new CompletableFuture<>();
+        final CompletableFuture<KeyValues> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+        if (inFlightLoad != null) {
+            return inFlightLoad.copy();
+        }
+        loadAndAddAsync(key, currentAsyncPersistence).whenComplete((loadedKeyValues, e) -> {
+            if (e != null) {
+                load.completeExceptionally(e);
+            } else {
+                load.complete(loadedKeyValues);
+            }
+            inFlightLoads.remove(key, load);
+        });
+        return load.copy();
+    }
+
+    private CompletableFuture<KeyValues> loadAndAddAsync(final String key, final AsyncPersistence currentAsyncPersistence) {
+        final KeyValues keyValues = keyValuesMap.get(key); // a load that just finished may have added it
+        if (keyValues != null) {
+            return CompletableFuture.completedFuture(keyValues);
+        }
+        final MissingKeyCache currentMissingKeyCache = missingKeyCache;
+        if (currentMissingKeyCache != null && currentMissingKeyCache.isMissing(key)) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return start(() -> currentAsyncPersistence.load(key, domainSpecificValueFactory)).thenApply(loadedKeyValues -> {
+            if (loadedKeyValues == null) {
+                if (currentMissingKeyCache != null) {
+                    currentMissingKeyCache.add(key);
+                }
+                return null;
+            }
+            return addLoaded(key, loadedKeyValues);
+        });
+    }
+
+    /**
+     * Start a call to the async persistence, a failure to start it fails the future instead of the caller.
+     */
+    private static <T> CompletableFuture<T> start(final Supplier<CompletableFuture<T>> call) {
+        try {
+            return call.get();
+        } catch (RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Add a key to the open batch of loads. The caller opening a batch waits for the batch window to pass or the batch to fill up and
+     * then loads all keys of the batch at once. Other callers only add their key and wait for the load to complete.
+     */
+    private void loadBatched(final String key, final CompletableFuture<KeyValues> load, final LoadBatching batching) {
+        final Map<String, CompletableFuture<KeyValues>> batch;
+        final boolean opened;
+        synchronized (batchLock) {
+            opened = openBatch == null;
+            if (opened) {
+                openBatch = new HashMap<>();
+            }
+            batch = openBatch;
+            batch.put(key, load);
+            if (batch.size() >= batching.maxBatchSize) {
+                openBatch = null;
+                batchLock.notifyAll();
+            }
+        }
+        if (opened) {
+            awaitBatch(batch, batching);
+            dispatch(batch);
+        }
+    }
+
+    private void awaitBatch(final Map<String, CompletableFuture<KeyValues>> batch, final LoadBatching batching) {
+        synchronized (batchLock) {
+            final long deadline = System.nanoTime() + batching.windowNanos;
+            long remaining = batching.windowNanos;
+            try {
+                while (openBatch == batch && remaining > 0) {
+                    TimeUnit.NANOSECONDS.timedWait(batchLock, remaining);
+                    remaining = deadline - System.nanoTime();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt(); // load the batch right away
+            }
+            if (openBatch == batch) {
+                openBatch = null;
+            }
+        }
+    }
+
+    /**
+     * Load the keys of the given loads in a single call to persistence and complete the loads.
+     */
+    private void dispatch(final Map<String, CompletableFuture<KeyValues>> loads) {
+        try {
+            final Map<String, KeyValues> loadedKeyValues = loadAndAdd(loads.keySet());
+            loads.forEach((key, load) -> load.complete(loadedKeyValues.get(key)));
+        } catch (RuntimeException | Error e) {
+            loads.values().forEach(load -> load.completeExceptionally(e));
+        } finally {
+            loads.forEach(inFlightLoads::remove);
+        }
+    }
+
+    /**
+     * Load a key missing from the map and add it to the map. Only one thread at a time loads a key, concurrent callers wait for its
+     * result.
+     */
+    private KeyValues loadAndAdd(final String key) {
+        final KeyValues keyValues = keyValuesMap.get(key); // a load that just finished may have added it
         if (keyValues != null) {
             return keyValues;
         }
@@ -90,58 +509,215 @@ public class ValuesStore {
         if (loadedKeyValues == null) {
             return null;
         }
-        return lock.writeLocked(() -> {
-            KeyValues keyValuesSecondTry = keyValuesMap.get(key);
-            if (keyValuesSecondTry == null) {
-                keyValuesMap.put(key, loadedKeyValues);
-                return loadedKeyValues;
+        return addLoaded(key, loadedKeyValues);
+    }
+
+    /**
+     * Add loaded KeyValues, unless the key was added in the meantime. Loads take no lock, as writers holding the lock may wait for them.
+     * Values loaded while setAllValues swaps in a new map are added to the new map as well.
+     */
+    private KeyValues addLoaded(final String key, final KeyValues loadedKeyValues) {
+        KeyValuesMap currentKeyValuesMap;
+        KeyValues keyValues;
+        do {
+            currentKeyValuesMap = keyValuesMap; // swap publishes the map after its registry, so attach sees the registry of this map
+            keyValues = currentKeyValuesMap.computeIfAbsent(key, k -> attach(loadedKeyValues));
+        } while (currentKeyValuesMap != keyValuesMap);
+        return keyValues;
+    }
+
+    /**
+     * Wait for a load of another thread and give its result or rethrow its failure.
+     */
+    private static KeyValues await(final CompletableFuture<KeyValues> load) {
+        try {
+            return load.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Get the KeyValues of several keys, loading all keys not yet known in a single call to persistence. Keys another thread is loading
+     * already are not loaded again, their load is awaited instead.
+     *
+     * @return the KeyValues of the keys that have values
+     */
+    public Map<String, KeyValues> getKeyValuesFromMapOrPersistence(final Collection<String> keys) {
+        final Map<String, KeyValues> result = new HashMap<>();
+        final Set<String> missingKeys = new HashSet<>();
+        final KeyValuesMap currentKeyValuesMap = keyValuesMap;
+        for (String key : keys) {
+            final KeyValues keyValues = currentKeyValuesMap.get(key);
+            if (keyValues != null) {
+                result.put(key, keyValues);
+            } else {
+                missingKeys.add(key);
+            }
+        }
+        if (missingKeys.isEmpty() || persistence == null) {
+            return result;
+        }
+        final Map<String, CompletableFuture<KeyValues>> loads = new HashMap<>();
+        final Map<String, CompletableFuture<KeyValues>> ownLoads = new HashMap<>();
+        for (String key : missingKeys) {
+            final CompletableFuture<KeyValues> load = new CompletableFuture<>();
+            final CompletableFuture<KeyValues> inFlightLoad = inFlightLoads.putIfAbsent(key, load);
+            if (inFlightLoad == null) {
+                ownLoads.put(key, load);
+                loads.put(key, load);
             } else {
-                return keyValuesSecondTry;
+                loads.put(key, inFlightLoad);
+            }
+        }
+        if (!ownLoads.isEmpty()) {
+            dispatch(ownLoads);
+        }
+        loads.forEach((key, load) -> {
+            final KeyValues keyValues = await(load);
+            if (keyValues != null) {
+                result.put(key, keyValues);
             }
         });
+        return result;
     }
 
-    public String dump() {
-        return lock.readLocked(() -> {
-            StringBuilder builder = new StringBuilder(keyValuesMap.size() * 16);
-            for (Map.Entry<String, KeyValues> entry : keyValuesMap.entrySet()) {
-                builder.append('\n').append("KeyValues for \"").append(entry.getKey()).append("\": ").append(entry.getValue());
+    private Map<String, KeyValues> loadAndAdd(final Set<String> keys) {
+        final Map<String, KeyValues> result = new HashMap<>();
+        final Set<String> keysToLoad = new HashSet<>();
+        for (String key : keys) {
+            final KeyValues keyValues = keyValuesMap.get(key);
+            if (keyValues != null) {
+                result.put(key, keyValues);
+            } else {
+                keysToLoad.add(key);
             }
-            return builder.toString();
-        });
+        }
+        final MissingKeyCache currentMissingKeyCache = missingKeyCache;
+        if (currentMissingKeyCache != null) {
+            keysToLoad.removeIf(currentMissingKeyCache::isMissing);
+        }
+        if (keysToLoad.isEmpty()) {
+            return result;
+        }
+        final Collection<KeyValues> loadedKeyValues = persistence.loadAll(keysToLoad, domainSpecificValueFactory);
+        if (loadedKeyValues != null) {
+            for (KeyValues loaded : loadedKeyValues) {
+                if (loaded != null && keysToLoad.contains(loaded.getKey())) {
+                    result.put(loaded.getKey(), addLoaded(loaded.getKey(), loaded));
+                }
+            }
+        }
+        if (currentMissingKeyCache != null) {
+            for (String key : keysToLoad) {
+                if (!result.containsKey(key)) {
+                    currentMissingKeyCache.add(key);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Write a snapshot of all values and the version of DeltaPersistence changes they contain. Values changed while the snapshot is
+     * written may or may not be contained, the version is read first, so the changes after it contain them.
+     */
+    public void writeSnapshot(OutputStream out, ValueCodec valueCodec) throws IOException {
+        final long version = changesVersion;
+        KeyValuesSnapshot.write(getAllValues(), version, out, valueCodec);
+    }
+
+    /**
+     * Replace all values with the values of a snapshot. The next reload asks a DeltaPersistence for the changes since the snapshot.
+     */
+    public void readSnapshot(InputStream in, ValueCodec valueCodec) throws IOException {
+        final KeyValuesSnapshot snapshot = KeyValuesSnapshot.read(in, domainSpecificValueFactory, valueCodec);
+        setAllValues(snapshot.getKeyValues());
+        changesVersion = snapshot.getChangesVersion();
+    }
+
+    /**
+     * Write all values to a file, that openMapped can map, with the version of DeltaPersistence changes they contain. Values changed
+     * while the file is written may or may not be contained, the version is read first, so the changes after it contain them.
+     */
+    public void writeMapped(Path file, ValueCodec valueCodec) throws IOException {
+        final long version = changesVersion;
+        MappedKeyValuesFile.write(getAllValues(), version, file, valueCodec);
+    }
+
+    /**
+     * Replace all values with the values of a mapped file. The values stay off the heap and are decoded on every access, until they are
+     * changed. A following setAllValues or a reload of all values brings all values onto the heap again, a reload applying the changes
+     * of a DeltaPersistence since the file was written keeps the others mapped.
+     */
+    public void openMapped(Path file, ValueCodec valueCodec) throws IOException {
+        final MappedKeyValuesFile mappedFile = MappedKeyValuesFile.open(file, valueCodec);
+        swap(new MappedKeyValuesMap(mappedFile, domainSpecificValueFactory, this::attach), new DomainValueDictionary(),
+                new ChangeSetRegistry());
+        changesVersion = mappedFile.getChangesVersion();
+    }
+
+    public String dump() {
+        final Collection<KeyValues> values = keyValuesMap.values();
+        StringBuilder builder = new StringBuilder(values.size() * 16);
+        for (KeyValues keyValues : values) {
+            builder.append('\n').append("KeyValues for \"").append(keyValues.getKey()).append("\": ").append(keyValues);
+        }
+        return builder.toString();
     }
 
     public void dump(PrintStream out) {
-        lock.readLocked(() -> {
-            for (Map.Entry<String, KeyValues> entry : keyValuesMap.entrySet()) {
-                out.println();
-                out.print("KeyValues for \"");
-                out.print(entry.getKey());
-                out.print("\": ");
-                out.print(entry.getValue());
-            }
-        });
+        for (KeyValues keyValues : keyValuesMap.values()) {
+            out.println();
+            out.print("KeyValues for \"");
+            out.print(keyValues.getKey());
+            out.print("\": ");
+            out.print(keyValues);
+        }
     }
 
     public KeyValues getValuesFor(String key) {
-        return lock.readLocked(() -> keyValuesMap.get(key));
+        return keyValuesMap.get(key);
     }
 
     public KeyValues remove(String key) {
-        return lock.writeLocked(() -> {
+        return lock.readLocked(() -> keyLocks.locked(key, () -> {
             final KeyValues keyValues = keyValuesMap.remove(key);
+            invalidateResolvedValues(key);
+            if (keyValues != null) {
+                final List<ChangeEvent> events = changeNotifier.newEvents();
+                addRemoved(key, keyValues.getDomainSpecificValues(), events);
+                changeNotifier.publish(events);
+            }
             if (persistence != null) {
                 persistence.remove(key);
             }
             return keyValues;
-        });
+        }));
     }
 
     private KeyValues load(final String key) {
-        if (persistence != null) {
+        if (persistence == null) {
+            return null;
+        }
+        final MissingKeyCache currentMissingKeyCache = missingKeyCache;
+        if (currentMissingKeyCache == null) {
             return persistence.load(key, domainSpecificValueFactory);
         }
-        return null;
+        if (currentMissingKeyCache.isMissing(key)) {
+            return null;
+        }
+        final KeyValues keyValues = persistence.load(key, domainSpecificValueFactory);
+        if (keyValues == null) {
+            currentMissingKeyCache.add(key);
+        }
+        return keyValues;
     }
 
     public void setDomainSpecificValueFactory(DomainSpecificValueFactory domainSpecificValueFactory) {
@@ -152,64 +728,425 @@ public class ValuesStore {
         this.persistence = persistence;
     }
 
+    /**
+     * Set the persistence used by the async methods. Without one, the calls of the persistence are run on the async executor.
+     */
+    public void setAsyncPersistence(AsyncPersistence asyncPersistence) {
+        this.asyncPersistence = asyncPersistence;
+    }
+
+    private AsyncPersistence getAsyncPersistence() {
+        final AsyncPersistence currentAsyncPersistence = asyncPersistence;
+        if (currentAsyncPersistence != null || persistence == null) {
+            return currentAsyncPersistence;
+        }
+        return new AsyncPersistenceAdapter(persistence, getAsyncExecutor());
+    }
+
+    /**
+     * Set the executor the async methods change values on and, without an AsyncPersistence, call the persistence on. Without one, a pool
+     * of DEFAULT_ASYNC_THREADS daemon threads is created on first use, that close shuts down. It is not the common fork join pool, as
+     * calls to a blocking persistence would starve the other users of that pool.
+     */
+    public void setAsyncExecutor(Executor executor) {
+        this.asyncExecutor = Objects.requireNonNull(executor, "\"executor\" must not be null");
+    }
+
+    private Executor getAsyncExecutor() {
+        Executor result = asyncExecutor;
+        if (result == null) {
+            synchronized (asyncExecutorLock) {
+                result = asyncExecutor;
+                if (result == null) {
+                    defaultAsyncExecutor = newDefaultAsyncExecutor();
+                    result = defaultAsyncExecutor;
+                    asyncExecutor = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private static ExecutorService newDefaultAsyncExecutor() {
+        final AtomicInteger threadCount = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(DEFAULT_ASYNC_THREADS, DEFAULT_ASYNC_THREADS, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    final Thread thread = new Thread(runnable, "KeyValueResolver-async-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Shut down the pool created for the async methods, when no async executor was set. Async calls made afterwards fail.
+     */
+    public void close() {
+        synchronized (asyncExecutorLock) {
+            if (defaultAsyncExecutor != null) {
+                defaultAsyncExecutor.shutdown();
+            }
+        }
+    }
+
+    public void setMissingKeyCache(MissingKeyCache missingKeyCache) {
+        this.missingKeyCache = missingKeyCache;
+    }
+
+    /**
+     * Collect keys missed by concurrent callers and load them from persistence together with Persistence.loadAll. The first caller
+     * missing a key waits for the window to pass or maxBatchSize keys to be missed, before the keys are loaded. Pass a null window to load
+     * every key on its own again, which is the default.
+     *
+     * @param window       the time to wait for further keys to load with the first one
+     * @param maxBatchSize number of keys that are loaded right away without waiting for the window to pass
+     */
+    public void setLoadBatching(Duration window, int maxBatchSize) {
+        if (window == null) {
+            loadBatching = null;
+            return;
+        }
+        if (window.isNegative() || window.isZero()) {
+            throw new IllegalArgumentException("\"window\" must be positive, but was: " + window);
+        }
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("\"maxBatchSize\" must be positive, but was: " + maxBatchSize);
+        }
+        loadBatching = new LoadBatching(window.toNanos(), maxBatchSize);
+    }
+
+    /**
+     * Tell a listener about the values added, changed and removed from now on. The listener is called on the executor set with
+     * setChangeListenerExecutor, with the events in the order the changes were made.
+     */
+    public void addChangeListener(ChangeListener listener) {
+        changeNotifier.addListener(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        changeNotifier.removeListener(listener);
+    }
+
+    /**
+     * Set the executor ChangeListeners are called on, the common fork join pool by default. Only one task runs on it at a time.
+     */
+    public void setChangeListenerExecutor(Executor executor) {
+        changeNotifier.setExecutor(executor);
+    }
+
+    /**
+     * The lock writes take, with counts of its acquisitions and how often they had to wait. Reads take no lock.
+     */
+    public ReadWriteLockTool getLock() {
+        return lock;
+    }
+
+    public void setResolvedValueCache(ResolvedValueCache resolvedValueCache) {
+        this.resolvedValueCache = resolvedValueCache;
+    }
+
+    /**
+     * All KeyValues of the store share one dictionary to encode their patterns, so each distinct domain value is stored only once, and
+     * one registry for the bits of their change sets.
+     */
+    private KeyValues attach(KeyValues keyValues) {
+        return attach(keyValues, domainValueDictionary, changeSetRegistry);
+    }
+
+    private KeyValues attach(KeyValues keyValues, DomainValueDictionary dictionary, ChangeSetRegistry registry) {
+        keyValues.setDomainValueDictionary(dictionary);
+        keyValues.setChangeSetRegistry(registry);
+        return keyValues;
+    }
+
+    /*package*/ DomainValueDictionary getDomainValueDictionary() {
+        return domainValueDictionary;
+    }
+
+    /*package*/ ChangeSetRegistry getChangeSetRegistry() {
+        return changeSetRegistry;
+    }
+
+    /*package*/ ResolutionContext prepare(List<String> domains, DomainResolver resolver) {
+        return new ResolutionContext(domains, resolver, domainValueDictionary, changeSetRegistry);
+    }
+
+    private void invalidateResolvedValues(String key) {
+        if (resolvedValueCache != null) {
+            resolvedValueCache.invalidate(key);
+        }
+    }
+
+    private void invalidateAllResolvedValues() {
+        if (resolvedValueCache != null) {
+            resolvedValueCache.invalidateAll();
+        }
+    }
+
+    private void invalidateMissingKey(String key) {
+        final MissingKeyCache currentMissingKeyCache = missingKeyCache;
+        if (currentMissingKeyCache != null) {
+            currentMissingKeyCache.invalidate(key);
+        }
+    }
+
+    private void invalidateAllMissingKeys() {
+        final MissingKeyCache currentMissingKeyCache = missingKeyCache;
+        if (currentMissingKeyCache != null) {
+            currentMissingKeyCache.invalidateAll();
+        }
+    }
+
+    /**
+     * Reload the values from persistence. With a DeltaPersistence, only the changes since the previous load or reload are applied,
+     * otherwise all values are replaced.
+     */
     public void reload() {
-        if (persistence != null) {
-            setAllValues(persistence.reload(getAllValues(), domainSpecificValueFactory));
+        synchronized (reloadLock) {
+            if (persistence instanceof DeltaPersistence && changesVersion != UNKNOWN_VERSION) {
+                applyChanges(((DeltaPersistence) persistence).changesSince(changesVersion, domainSpecificValueFactory));
+            } else if (persistence != null) {
+                final long version = currentVersion();
+                final List<ChangeEvent> events = changeNotifier.newEvents();
+                final Map<String, ChangeNotifier.ValuesState> before = events == null ? null : ChangeNotifier.capture(getAllValues());
+                final Collection<KeyValues> values = persistence.reload(getAllValues(), domainSpecificValueFactory);
+                if (events != null) {
+                    ChangeNotifier.addChanges(before, ChangeNotifier.capture(values), events);
+                }
+                setAllValues(values);
+                changesVersion = version;
+                changeNotifier.publish(events);
+            }
         }
     }
 
-    public void reload(String key) {
-        if (persistence != null) {
-            final KeyValues keyValues = persistence.load(key, domainSpecificValueFactory);
+    /**
+     * Apply changes made in persistence to the values in memory, without storing them again. Keys changed, that are not known yet, are
+     * loaded completely, listeners are told about their changed values as added.
+     */
+    private void applyChanges(final PersistedChanges changes) {
+        if (!changes.isEmpty()) {
+            final Set<String> keys = new HashSet<>(changes.getChangedValues().keySet());
+            keys.addAll(changes.getDescriptions().keySet());
+            keys.forEach(this::invalidateMissingKey);
+            final Set<String> loadedKeys = new HashSet<>();
+            for (String key : changes.getChangedValues().keySet()) {
+                if (keyValuesMap.get(key) == null) {
+                    loadedKeys.add(key);
+                }
+            }
+            getKeyValuesFromMapOrPersistence(keys);
+            keys.addAll(changes.getRemovedValues().keySet());
             lock.writeLocked(() -> {
-                if (keyValues != null) {
-                    keyValuesMap.put(key, keyValues);
-                } else {
-                    keyValuesMap.remove(key);
+                final List<ChangeEvent> events = changeNotifier.newEvents();
+                changes.getChangedValues().forEach((key, values) -> {
+                    final KeyValues keyValues = keyValuesMap.computeIfAbsent(key,
+                            k -> attach(new KeyValues(key, domainSpecificValueFactory, changes.getDescriptions().get(key))));
+                    if (events != null && loadedKeys.contains(key)) {
+                        // loaded with the changes already, so tell about them as added, like a reload of all values does
+                        values.forEach(value -> {
+                            keyValues.put(value, (List<ChangeEvent>) null);
+                            events.add(ChangeEvent.added(key, value));
+                        });
+                    } else {
+                        values.forEach(value -> keyValues.put(value, events));
+                    }
+                });
+                changes.getDescriptions().forEach((key, description) -> {
+                    final KeyValues keyValues = keyValuesMap.get(key);
+                    if (keyValues != null) {
+                        keyValues.setDescription(description);
+                        keyValuesMap.changed(keyValues);
+                    }
+                });
+                changes.getRemovedValues().forEach((key, values) -> {
+                    final KeyValues keyValues = keyValuesMap.get(key);
+                    if (keyValues == null) {
+                        return;
+                    }
+                    final Collection<DomainSpecificValue> changedValues = changes.getChangedValues().getOrDefault(key, List.of());
+                    values.stream()
+                            .filter(value -> !containsSameValue(changedValues, value)) // removed and added again
+                            .forEach(value -> addRemoved(key, keyValues.remove(value), events));
+                    if (keyValues.isEmpty()) {
+                        keyValuesMap.remove(key);
+                    } else {
+                        keyValuesMap.changed(keyValues);
+                    }
+                });
+                for (String key : keys) {
+                    invalidateResolvedValues(key);
+                    invalidateMissingKey(key);
                 }
+                changeNotifier.publish(events);
             });
         }
+        changesVersion = changes.getVersion();
+    }
+
+    public void reload(String key) {
+        if (persistence != null) {
+            invalidateMissingKey(key);
+            replace(key, persistence.load(key, domainSpecificValueFactory));
+        }
+    }
+
+    /**
+     * Reload a key without blocking the caller.
+     *
+     * @return a future completed, when the reloaded values are visible
+     */
+    public CompletableFuture<Void> reloadAsync(String key) {
+        final AsyncPersistence currentAsyncPersistence = getAsyncPersistence();
+        if (currentAsyncPersistence == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        invalidateMissingKey(key);
+        final CompletableFuture<KeyValues> load = start(() -> currentAsyncPersistence.load(key, domainSpecificValueFactory));
+        return keyLockedAsync(key, load, () -> {
+            replace(key, load.join());
+            return null;
+        });
+    }
+
+    private void replace(String key, KeyValues keyValues) {
+        keyLocked(key, () -> {
+            final List<ChangeEvent> events = changeNotifier.newEvents();
+            if (events != null) {
+                ChangeNotifier.addChanges(key, ChangeNotifier.capture(keyValuesMap.get(key)), ChangeNotifier.capture(keyValues), events);
+            }
+            if (keyValues != null) {
+                keyValuesMap.put(key, attach(keyValues));
+            } else {
+                keyValuesMap.remove(key);
+            }
+            invalidateResolvedValues(key);
+            changeNotifier.publish(events);
+        });
     }
 
     public void removeWithChangeSet(final String key, final String changeSet, final String... domainValues) {
-        lock.writeLocked(() -> {
-            KeyValues keyValues = getKeyValuesFromMapOrPersistence(key);
+        getKeyValuesFromMapOrPersistence(key); // loaded before the locks are taken, see loadForWrite
+        keyLocked(key, () -> {
+            final KeyValues keyValues = keyValuesMap.get(key);
             if (keyValues != null) {
-                removeFromPersistence(key, keyValues.remove(changeSet, domainValues));
-                if (keyValues.isEmpty()) {
-                    remove(key);
+                final DomainSpecificValue removed = keyValues.remove(changeSet, domainValues);
+                final boolean empty = applyRemoval(keyValues, removed != null);
+                final List<ChangeEvent> events = changeNotifier.newEvents();
+                addRemoved(key, removed, events);
+                changeNotifier.publish(events);
+                removeFromPersistence(key, removed);
+                if (empty && persistence != null) {
+                    persistence.remove(key);
                 }
             }
         });
     }
 
     public void removeAllMatching(String key, List<String> domains, String... domainValues) {
-        lock.writeLocked(() -> {
-            final KeyValues keyValues = getKeyValuesFromMapOrPersistence(key);
+        getKeyValuesFromMapOrPersistence(key); // loaded before the locks are taken, see loadForWrite
+        keyLocked(key, () -> {
+            final KeyValues keyValues = keyValuesMap.get(key);
             if (keyValues != null) {
-                keyValues.removeAll(domains, resolverFor(domains, domainValues))
-                        .forEach(domainSpecificValue -> removeFromPersistence(key, domainSpecificValue));
-                if (keyValues.isEmpty()) {
-                    remove(key);
+                final Collection<DomainSpecificValue> removed = keyValues.removeAll(domains, resolverFor(domains, domainValues));
+                final boolean empty = applyRemoval(keyValues, !removed.isEmpty());
+                final List<ChangeEvent> events = changeNotifier.newEvents();
+                addRemoved(key, removed, events);
+                changeNotifier.publish(events);
+                removed.forEach(domainSpecificValue -> removeFromPersistence(key, domainSpecificValue));
+                if (empty && persistence != null) {
+                    persistence.remove(key);
                 }
             }
         });
     }
 
+    /**
+     * Keep the removal of values from KeyValues in memory, removing the key, when no values are left. Is called before listeners are
+     * told about the removal and persistence is changed, so listeners hear about it, even when persistence fails.
+     *
+     * @return true, when the key was removed
+     */
+    private boolean applyRemoval(final KeyValues keyValues, final boolean changed) {
+        final String key = keyValues.getKey();
+        invalidateResolvedValues(key);
+        if (keyValues.isEmpty()) {
+            keyValuesMap.remove(key);
+            return true;
+        }
+        if (changed) {
+            keyValuesMap.changed(keyValues);
+        }
+        return false;
+    }
+
+    /**
+     * @return true, when the values contain a value with the same pattern and change set
+     */
+    private static boolean containsSameValue(final Collection<DomainSpecificValue> values, final DomainSpecificValue value) {
+        for (DomainSpecificValue candidate : values) {
+            if (candidate.getPattern().equals(value.getPattern()) && Objects.equals(candidate.getChangeSet(), value.getChangeSet())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void addRemoved(final String key, final DomainSpecificValue removed, final List<ChangeEvent> events) {
+        if (events != null && removed != null) {
+            events.add(ChangeEvent.removed(key, removed, removed.getValue()));
+        }
+    }
+
+    private static void addRemoved(final String key, final Collection<DomainSpecificValue> removed, final List<ChangeEvent> events) {
+        for (DomainSpecificValue domainSpecificValue : removed) {
+            addRemoved(key, domainSpecificValue, events);
+        }
+    }
+
     private void removeFromPersistence(final String key, final DomainSpecificValue domainSpecificValue) {
         if (persistence != null && domainSpecificValue != null) {
             persistence.remove(key, domainSpecificValue);
         }
     }
 
+    /**
+     * Remove all values of a change set. The domain values and change sets still used are registered anew, so those of the removed
+     * values are dropped and the removed change set gives its bit back, change sets added later still get one.
+     */
     public void removeChangeSet(String changeSet) {
         lock.writeLocked(() -> {
+            final List<ChangeEvent> events = changeNotifier.newEvents();
+            final Map<String, Collection<DomainSpecificValue>> removedValues = new HashMap<>();
+            final DomainValueDictionary newDictionary = new DomainValueDictionary();
+            final ChangeSetRegistry newChangeSetRegistry = new ChangeSetRegistry();
+            // KeyValues decoded from a mapped file while iterating are attached to these already
+            domainValueDictionary = newDictionary;
+            changeSetRegistry = newChangeSetRegistry;
             for (KeyValues keyValues : keyValuesMap.values()) {
+                attach(keyValues, newDictionary, newChangeSetRegistry);
                 final Collection<DomainSpecificValue> domainSpecificValues = keyValues.removeChangeSet(changeSet);
-                for (DomainSpecificValue value : domainSpecificValues) {
-                    removeFromPersistence(keyValues.getKey(), value);
+                if (!domainSpecificValues.isEmpty()) {
+                    keyValuesMap.changed(keyValues);
+                    invalidateResolvedValues(keyValues.getKey());
+                    removedValues.put(keyValues.getKey(), domainSpecificValues);
                 }
+                addRemoved(keyValues.getKey(), domainSpecificValues, events);
             }
+            changeNotifier.publish(events);
+            removedValues.forEach((key, values) -> values.forEach(value -> removeFromPersistence(key, value)));
         });
     }
+
+    private static final class LoadBatching {
+
+        private final long windowNanos;
+        private final int maxBatchSize;
+
+        private LoadBatching(long windowNanos, int maxBatchSize) {
+            this.windowNanos = windowNanos;
+            this.maxBatchSize = maxBatchSize;
+        }
+    }
 }
@@ -0,0 +1,535 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Decorates a Persistence, so stores and removes do not wait for the persistence. Writes are queued and written by a background thread,
+ * after the flush interval has passed or when the queue is full. Repeated writes of the same value, that is the same key, pattern and
+ * change set, are merged into one write before they reach the persistence, removing a key drops all queued writes of the key. The
+ * queued values are written in batches with Persistence.removeAll and Persistence.storeAll. Values removed with remove are removed one
+ * by one, unless the KeyValues of their key are known from another write queued.
+ * <p>
+ * The queue is bounded: when maxPendingWrites writes are queued, further writes wait until the queue has been written. Loads of keys
+ * with queued writes write the queue first, so they never miss a write. A failing write is logged and not retried, call flush() to get
+ * the failure thrown instead. Call close() on shutdown to write all queued writes.
+ * <p>
+ * Use {@link #of} to decorate a Persistence. For a DeltaPersistence or a StreamingPersistence it gives a WriteBehindPersistence
+ * implementing them as well, their reads write the queue first, like loadAll does.
+ */
+public class WriteBehindPersistence implements Persistence, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(WriteBehindPersistence.class);
+
+    private final Persistence persistence;
+    private final int maxPendingWrites;
+    private final long flushIntervalNanos;
+    private final ReentrantLock lock = new ReentrantLock(); // guards the queue
+    private final Condition changed = lock.newCondition();
+    private final ReentrantLock flushLock = new ReentrantLock(); // held while writing, so writes reach persistence in order
+    private final Thread flusher;
+    private Map<String, KeyWrites> pendingWrites = new LinkedHashMap<>();
+    private int pendingWriteCount;
+    private boolean flushRequested;
+    private boolean closed;
+    private final LongAdder coalescedWrites = new LongAdder();
+    private final LongAdder flushedWrites = new LongAdder();
+    private final LongAdder failedWrites = new LongAdder();
+
+    private WriteBehindPersistence(final Persistence persistence, final int maxPendingWrites, final Duration flushInterval) {
+        this.persistence = Objects.requireNonNull(persistence, "\"persistence\" must not be null");
+        if (maxPendingWrites <= 0) {
+            throw new IllegalArgumentException("\"maxPendingWrites\" must be positive, but was: " + maxPendingWrites);
+        }
+        Objects.requireNonNull(flushInterval, "\"flushInterval\" must not be null");
+        if (flushInterval.isNegative()) {
+            throw new IllegalArgumentException("\"flushInterval\" must not be negative, but was: " + flushInterval);
+        }
+        this.maxPendingWrites = maxPendingWrites;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        flusher = new Thread(this::flushContinuously, "KeyValueResolver-WriteBehind");
+        flusher.setDaemon(true);
+    }
+
+    /**
+     * Decorate a Persistence, the WriteBehindPersistence returned is a DeltaPersistence or StreamingPersistence, when the persistence
+     * is. Its background thread is started once it is completely constructed.
+     *
+     * @param persistence      the persistence to write to
+     * @param maxPendingWrites number of writes to queue, before writers have to wait
+     * @param flushInterval    time a write waits in the queue, so later writes of the same value can be merged with it
+     */
+    public static WriteBehindPersistence of(final Persistence persistence, final int maxPendingWrites, final Duration flushInterval) {
+        final WriteBehindPersistence writeBehindPersistence;
+        if (persistence instanceof DeltaPersistence && persistence instanceof StreamingPersistence) {
+            writeBehindPersistence = new DeltaStreaming(persistence, maxPendingWrites, flushInterval);
+        } else if (persistence instanceof DeltaPersistence) {
+            writeBehindPersistence = new Delta(persistence, maxPendingWrites, flushInterval);
+        } else if (persistence instanceof StreamingPersistence) {
+            writeBehindPersistence = new Streaming(persistence, maxPendingWrites, flushInterval);
+        } else {
+            writeBehindPersistence = new WriteBehindPersistence(persistence, maxPendingWrites, flushInterval);
+        }
+        writeBehindPersistence.flusher.start();
+        return writeBehindPersistence;
+    }
+
+    @Override
+    public KeyValues load(final String key, final DomainSpecificValueFactory domainSpecificValueFactory) {
+        flushIfPending(key);
+        return persistence.load(key, domainSpecificValueFactory);
+    }
+
+    @Override
+    public Collection<KeyValues> loadAll(final DomainSpecificValueFactory domainSpecificValueFactory) {
+        flush();
+        return persistence.loadAll(domainSpecificValueFactory);
+    }
+
+    @Override
+    public Collection<KeyValues> loadAll(final Collection<String> keys, final DomainSpecificValueFactory domainSpecificValueFactory) {
+        keys.forEach(this::flushIfPending);
+        return persistence.loadAll(keys, domainSpecificValueFactory);
+    }
+
+    @Override
+    public Collection<KeyValues> reload(final Collection<KeyValues> keyValues,
+            final DomainSpecificValueFactory domainSpecificValueFactory) {
+        flush();
+        return persistence.reload(keyValues, domainSpecificValueFactory);
+    }
+
+    @Override
+    public void store(final String key, final KeyValues keyValues, final DomainSpecificValue domainSpecificValue) {
+        enqueue(key, writes -> writes.put(domainSpecificValue, keyValues, true));
+    }
+
+    @Override
+    public void storeAll(final Map<KeyValues, Collection<DomainSpecificValue>> domainSpecificValues) {
+        domainSpecificValues.forEach((keyValues, values) -> values.forEach(value -> store(keyValues.getKey(), keyValues, value)));
+    }
+
+    @Override
+    public void remove(final String key) {
+        enqueue(key, KeyWrites::removeKey);
+    }
+
+    @Override
+    public void remove(final String key, final DomainSpecificValue domainSpecificValue) {
+        enqueue(key, writes -> writes.put(domainSpecificValue, null, false));
+    }
+
+    @Override
+    public void removeAll(final Map<KeyValues, Collection<DomainSpecificValue>> domainSpecificValues) {
+        domainSpecificValues.forEach((keyValues, values) -> values.forEach(
+                value -> enqueue(keyValues.getKey(), writes -> writes.put(value, keyValues, false))));
+    }
+
+    private void enqueue(final String key, final ToIntFunction<KeyWrites> write) {
+        lock.lock();
+        try {
+            while (pendingWriteCount >= maxPendingWrites && !closed) {
+                flushRequested = true;
+                changed.signalAll();
+                changed.awaitUninterruptibly();
+            }
+            if (closed) {
+                throw new IllegalStateException("WriteBehindPersistence is closed");
+            }
+            final KeyWrites writes = pendingWrites.computeIfAbsent(key, KeyWrites::new);
+            final int added = write.applyAsInt(writes);
+            pendingWriteCount += added;
+            if (added <= 0) {
+                coalescedWrites.add(1 - added);
+            }
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write all queued writes to the persistence and wait for them to be written.
+     *
+     * @throws RuntimeException the first failure of a write, all other writes are written nevertheless
+     */
+    public void flush() {
+        flushLock.lock();
+        try {
+            final RuntimeException failure = writePending();
+            if (failure != null) {
+                throw failure;
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushIfPending(final String key) {
+        flushLock.lock(); // waits for a running flush, which may contain writes of the key
+        try {
+            final boolean pending;
+            lock.lock();
+            try {
+                pending = pendingWrites.containsKey(key);
+            } finally {
+                lock.unlock();
+            }
+            if (pending) {
+                flush();
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Stop the background thread after all queued writes are written. Writes after closing fail.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    private void flushContinuously() {
+        while (awaitWrites()) {
+            flushLock.lock();
+            try {
+                writePending();
+            } finally {
+                flushLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Wait for writes and then for the flush interval to pass, unless the queue is full, a flush was requested or the persistence is
+     * closed.
+     *
+     * @return false, when the persistence is closed
+     */
+    private boolean awaitWrites() {
+        lock.lock();
+        try {
+            while (pendingWriteCount == 0 && !closed) {
+                changed.awaitUninterruptibly();
+            }
+            long remaining = flushIntervalNanos;
+            while (remaining > 0 && !closed && !flushRequested && pendingWriteCount < maxPendingWrites) {
+                remaining = changed.awaitNanos(remaining);
+            }
+            return !closed;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Take the queued writes and write them. Must be called holding the flushLock.
+     *
+     * @return the first failure of a write or null
+     */
+    private RuntimeException writePending() {
+        final Map<String, KeyWrites> writes;
+        lock.lock();
+        try {
+            writes = pendingWrites;
+            pendingWrites = new LinkedHashMap<>();
+            pendingWriteCount = 0;
+            flushRequested = false;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        final Map<String, Collection<DomainSpecificValue>> singleRemovals = new LinkedHashMap<>();
+        final Map<KeyValues, Collection<DomainSpecificValue>> removals = new LinkedHashMap<>(); // KeyValues are compared by identity
+        final Map<KeyValues, Collection<DomainSpecificValue>> stores = new LinkedHashMap<>();
+        RuntimeException failure = null;
+        for (KeyWrites keyWrites : writes.values()) {
+            if (keyWrites.removeKey) {
+                failure = firstOf(failure, write(() -> persistence.remove(keyWrites.key), 1, keyWrites.key));
+            }
+            keyWrites.collect(singleRemovals, removals, stores);
+        }
+        for (Map.Entry<String, Collection<DomainSpecificValue>> entry : singleRemovals.entrySet()) {
+            for (DomainSpecificValue value : entry.getValue()) {
+                failure = firstOf(failure, write(() -> persistence.remove(entry.getKey(), value), 1, entry.getKey()));
+            }
+        }
+        if (!removals.isEmpty()) {
+            failure = firstOf(failure, write(() -> persistence.removeAll(removals), count(removals.values()), writes.keySet()));
+        }
+        if (!stores.isEmpty()) {
+            failure = firstOf(failure, write(() -> persistence.storeAll(stores), count(stores.values()), writes.keySet()));
+        }
+        return failure;
+    }
+
+    private RuntimeException write(final Runnable write, final int writeCount, final Object keys) {
+        try {
+            write.run();
+            flushedWrites.add(writeCount);
+            return null;
+        } catch (RuntimeException e) {
+            failedWrites.add(writeCount);
+            LOGGER.error("Writing {} values of keys: {} failed, the writes are dropped", writeCount, keys, e);
+            return e;
+        }
+    }
+
+    private static int count(final Collection<Collection<DomainSpecificValue>> values) {
+        int count = 0;
+        for (Collection<DomainSpecificValue> domainSpecificValues : values) {
+            count += domainSpecificValues.size();
+        }
+        return count;
+    }
+
+    private static RuntimeException firstOf(final RuntimeException failure, final RuntimeException other) {
+        return failure != null ? failure : other;
+    }
+
+    public int getPendingWriteCount() {
+        lock.lock();
+        try {
+            return pendingWriteCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of writes, that were merged with a later write of the same value or dropped by removing their key
+     */
+    public long getCoalescedWriteCount() {
+        return coalescedWrites.sum();
+    }
+
+    public long getFlushedWriteCount() {
+        return flushedWrites.sum();
+    }
+
+    public long getFailedWriteCount() {
+        return failedWrites.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "WriteBehindPersistence{persistence=" + persistence + ", pendingWrites=" + getPendingWriteCount() + ", coalescedWrites="
+                + getCoalescedWriteCount() + ", flushedWrites=" + getFlushedWriteCount() + ", failedWrites=" + getFailedWriteCount() + '}';
+    }
+
+    /**
+     * The queued writes of one key, in the order they have to be written: first the removal of the whole key, then the writes of single
+     * values. A single value is identified by its pattern and change set.
+     */
+    private final class KeyWrites {
+
+        private final String key;
+        private boolean removeKey;
+        private KeyValues keyValues; // given by the latest write queued with KeyValues
+        private final Map<Slot, Write> writes = new LinkedHashMap<>();
+
+        private KeyWrites(final String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the number of writes added to the queue, negative when writes were dropped
+         */
+        private int put(final DomainSpecificValue domainSpecificValue, final KeyValues keyValues, final boolean store) {
+            if (keyValues != null) {
+                this.keyValues = keyValues;
+            }
+            final Write replaced = writes.put(new Slot(domainSpecificValue), new Write(domainSpecificValue, store));
+            return replaced == null ? 1 : 0;
+        }
+
+        private int removeKey() {
+            final int dropped = writes.size();
+            writes.clear();
+            keyValues = null;
+            if (removeKey) {
+                return -dropped;
+            }
+            removeKey = true;
+            return 1 - dropped;
+        }
+
+        /**
+         * Add the queued removals and stores of single values to the batches written to the persistence, removals go to the single
+         * removals, when the KeyValues of the key are not known.
+         */
+        private void collect(final Map<String, Collection<DomainSpecificValue>> singleRemovals,
+                final Map<KeyValues, Collection<DomainSpecificValue>> removals,
+                final Map<KeyValues, Collection<DomainSpecificValue>> stores) {
+            for (Write write : writes.values()) {
+                if (write.store) {
+                    stores.computeIfAbsent(keyValues, k -> new ArrayList<>()).add(write.domainSpecificValue);
+                } else if (keyValues != null) {
+                    removals.computeIfAbsent(keyValues, k -> new ArrayList<>()).add(write.domainSpecificValue);
+                } else {
+                    singleRemovals.computeIfAbsent(key, k -> new ArrayList<>()).add(write.domainSpecificValue);
+                }
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        private final String pattern;
+        private final String changeSet;
+
+        private Slot(final DomainSpecificValue domainSpecificValue) {
+            this.pattern = domainSpecificValue.getPattern();
+            this.changeSet = domainSpecificValue.getChangeSet();
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Slot)) {
+                return false;
+            }
+            final Slot slot = (Slot) o;
+            return pattern.equals(slot.pattern) && Objects.equals(changeSet, slot.changeSet);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * pattern.hashCode() + Objects.hashCode(changeSet);
+        }
+    }
+
+    /**
+     * A store of a value, or a removal of the value.
+     */
+    private static final class Write {
+
+        private final DomainSpecificValue domainSpecificValue;
+        private final boolean store;
+
+        private Write(final DomainSpecificValue domainSpecificValue, final boolean store) {
+            this.domainSpecificValue = domainSpecificValue;
+            this.store = store;
+        }
+    }
+
+    private static class Delta extends WriteBehindPersistence implements DeltaPersistence {
+
+        private final DeltaPersistence deltaPersistence;
+
+        private Delta(final Persistence persistence, final int maxPendingWrites, final Duration flushInterval) {
+            super(persistence, maxPendingWrites, flushInterval);
+            this.deltaPersistence = (DeltaPersistence) persistence;
+        }
+
+        @Override
+        public long currentVersion() {
+            return deltaPersistence.currentVersion();
+        }
+
+        @Override
+        public PersistedChanges changesSince(final long version, final DomainSpecificValueFactory domainSpecificValueFactory) {
+            flush();
+            return deltaPersistence.changesSince(version, domainSpecificValueFactory);
+        }
+    }
+
+    private static final class Streaming extends WriteBehindPersistence implements StreamingPersistence {
+
+        private final StreamingPersistence streamingPersistence;
+
+        private Streaming(final Persistence persistence, final int maxPendingWrites, final Duration flushInterval) {
+            super(persistence, maxPendingWrites, flushInterval);
+            this.streamingPersistence = (StreamingPersistence) persistence;
+        }
+
+        @Override
+        public Stream<KeyValues> streamAll(final DomainSpecificValueFactory domainSpecificValueFactory) {
+            flush();
+            return streamingPersistence.streamAll(domainSpecificValueFactory);
+        }
+
+        @Override
+        public long sizeHint() {
+            return streamingPersistence.sizeHint();
+        }
+
+        @Override
+        public int getLoadParallelism() {
+            return streamingPersistence.getLoadParallelism();
+        }
+    }
+
+    private static final class DeltaStreaming extends Delta implements StreamingPersistence {
+
+        private final StreamingPersistence streamingPersistence;
+
+        private DeltaStreaming(final Persistence persistence, final int maxPendingWrites, final Duration flushInterval) {
+            super(persistence, maxPendingWrites, flushInterval);
+            this.streamingPersistence = (StreamingPersistence) persistence;
+        }
+
+        @Override
+        public Stream<KeyValues> streamAll(final DomainSpecificValueFactory domainSpecificValueFactory) {
+            flush();
+            return streamingPersistence.streamAll(domainSpecificValueFactory);
+        }
+
+        @Override
+        public long sizeHint() {
+            return streamingPersistence.sizeHint();
+        }
+
+        @Override
+        public int getLoadParallelism() {
+            return streamingPersistence.getLoadParallelism();
+        }
+    }
+}
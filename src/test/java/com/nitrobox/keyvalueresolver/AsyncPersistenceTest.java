@@ -0,0 +1,153 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class AsyncPersistenceTest {
+
+    private final Persistence persistence = mock(Persistence.class);
+    private final AsyncPersistence asyncPersistence = mock(AsyncPersistence.class);
+    private final DomainSpecificValueFactory domainSpecificValueFactory = new DefaultDomainSpecificValueFactory();
+    private KeyValueResolverImpl keyValueResolver;
+
+    @BeforeEach
+    void before() {
+        keyValueResolver = new KeyValueResolverImpl(persistence, domainSpecificValueFactory);
+        keyValueResolver.setAsyncPersistence(asyncPersistence);
+        keyValueResolver.setAsyncExecutor(Runnable::run); // change the values right away, to check them without waiting
+    }
+
+    @Test
+    void getAsyncCompletesWhenTheKeyIsLoaded() {
+        CompletableFuture<KeyValues> load = new CompletableFuture<>();
+        when(asyncPersistence.load("key", domainSpecificValueFactory)).thenReturn(load);
+
+        CompletableFuture<String> value = keyValueResolver.getAsync("key");
+
+        assertThat(value).isNotDone();
+        KeyValues keyValues = new KeyValues("key", domainSpecificValueFactory);
+        keyValues.put("value");
+        load.complete(keyValues);
+        assertThat(value).isCompletedWithValue("value");
+        assertThat((String) keyValueResolver.get("key")).isEqualTo("value");
+        verify(persistence, never()).load(any(), any());
+    }
+
+    @Test
+    void getAsyncOfAKnownKeyIsCompletedRightAway() {
+        keyValueResolver.set("key", "value", null);
+
+        assertThat(keyValueResolver.<String>getAsync("key")).isCompletedWithValue("value");
+        verify(asyncPersistence, never()).load(any(), any());
+    }
+
+    @Test
+    void aFailedLoadFailsTheFuture() {
+        when(asyncPersistence.load("key", domainSpecificValueFactory))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("no connection")));
+
+        assertThat(keyValueResolver.getAsync("key")).isCompletedExceptionally();
+    }
+
+    @Test
+    void setAsyncMakesTheValueVisibleBeforeItIsStored() {
+        CompletableFuture<Void> store = new CompletableFuture<>();
+        when(asyncPersistence.load("key", domainSpecificValueFactory)).thenReturn(CompletableFuture.completedFuture(null));
+        when(asyncPersistence.store(eq("key"), any(), any())).thenReturn(store);
+
+        CompletableFuture<DomainSpecificValue> set = keyValueResolver.setAsync("key", "value", null);
+
+        assertThat((String) keyValueResolver.get("key")).isEqualTo("value");
+        assertThat(set).isNotDone();
+        store.complete(null);
+        assertThat(set).isCompletedWithValue(DomainSpecificValue.withoutChangeSet("value"));
+        assertThat(set.join()).isSameAs(keyValueResolver.getKeyValues("key").getDomainSpecificValues().iterator().next());
+        verify(persistence, never()).store(any(), any(), any());
+    }
+
+    @Test
+    void setAsyncDoesNotWaitForAWriteOfTheSameKey() throws Exception {
+        CountDownLatch storing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if ("blocking".equals(invocation.<DomainSpecificValue>getArgument(2).getValue())) {
+                storing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(persistence).store(eq("key"), any(), any());
+        try (KeyValueResolverImpl resolver = new KeyValueResolverImpl(persistence, domainSpecificValueFactory)) {
+            Thread writer = new Thread(() -> resolver.set("key", "blocking", null));
+            writer.start();
+            storing.await(5, TimeUnit.SECONDS);
+
+            CompletableFuture<DomainSpecificValue> set = assertTimeoutPreemptively(Duration.ofSeconds(1),
+                    () -> resolver.setAsync("key", "async", null));
+
+            assertThat(set).isNotDone();
+            release.countDown();
+            writer.join();
+            assertThat(set.get(5, TimeUnit.SECONDS).getValue()).isEqualTo("async");
+            assertThat((String) resolver.get("key")).isEqualTo("async");
+        }
+    }
+
+    @Test
+    void reloadAsyncReplacesTheValuesOfAKey() {
+        keyValueResolver.set("key", "old", null);
+        KeyValues keyValues = new KeyValues("key", domainSpecificValueFactory);
+        keyValues.put("new");
+        when(asyncPersistence.load("key", domainSpecificValueFactory)).thenReturn(CompletableFuture.completedFuture(keyValues));
+
+        assertThat(keyValueResolver.reloadAsync("key")).isCompleted();
+        assertThat((String) keyValueResolver.get("key")).isEqualTo("new");
+    }
+
+    @Test
+    void adapterRunsTheCallsOfAPersistenceOnTheExecutor() {
+        List<Runnable> tasks = new ArrayList<>();
+        AsyncPersistenceAdapter adapter = new AsyncPersistenceAdapter(persistence, tasks::add);
+        KeyValues keyValues = new KeyValues("key", domainSpecificValueFactory);
+        when(persistence.load("key", domainSpecificValueFactory)).thenReturn(keyValues);
+
+        CompletableFuture<KeyValues> load = adapter.load("key", domainSpecificValueFactory);
+
+        assertThat(load).isNotDone();
+        verify(persistence, never()).load(any(), any());
+        tasks.forEach(Runnable::run);
+        assertThat(load).isCompletedWithValue(keyValues);
+    }
+}
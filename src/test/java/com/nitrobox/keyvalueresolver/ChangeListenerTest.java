@@ -0,0 +1,129 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.nitrobox.keyvalueresolver.ChangeEvent.Type;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ChangeListenerTest {
+
+    private final Persistence persistence = mock(Persistence.class);
+    private final List<ChangeEvent> events = new ArrayList<>();
+    private KeyValueResolverImpl keyValueResolver;
+
+    @BeforeEach
+    void setUp() {
+        keyValueResolver = new KeyValueResolverImpl(persistence, "country");
+        keyValueResolver.setChangeListenerExecutor(Runnable::run);
+        keyValueResolver.addChangeListener(events::addAll);
+    }
+
+    @Test
+    void setTellsAboutAddedAndChangedValues() {
+        keyValueResolver.set("key", "value", null);
+        keyValueResolver.set("key", "german value", null, "DE");
+        keyValueResolver.set("key", "changed value", null);
+        keyValueResolver.set("key", "changed value", null);
+
+        assertThat(events).extracting(ChangeEvent::getType, ChangeEvent::getPattern, ChangeEvent::getOldValue, ChangeEvent::getNewValue)
+                .containsExactly(
+                        tuple(Type.ADDED, "", null, "value"),
+                        tuple(Type.ADDED, "DE|", null, "german value"),
+                        tuple(Type.CHANGED, "", "value", "changed value"));
+    }
+
+    @Test
+    void removesTellAboutRemovedValues() {
+        keyValueResolver.set("key", "value", null);
+        keyValueResolver.setWithChangeSet("key", "changed value", null, "changeSet");
+        keyValueResolver.set("key", "german value", null, "DE");
+        events.clear();
+
+        keyValueResolver.removeChangeSet("changeSet");
+        keyValueResolver.remove("key", "DE");
+        keyValueResolver.removeKey("key");
+
+        assertThat(events).extracting(ChangeEvent::getType, ChangeEvent::getChangeSet, ChangeEvent::getPattern, ChangeEvent::getOldValue)
+                .containsExactly(
+                        tuple(Type.REMOVED, "changeSet", "", "changed value"),
+                        tuple(Type.REMOVED, null, "DE|", "german value"),
+                        tuple(Type.REMOVED, null, "", "value"));
+    }
+
+    @Test
+    void changesAreToldEvenWhenPersistenceFails() {
+        doThrow(new IllegalStateException("no connection")).when(persistence).store(any(), any(), any());
+        doThrow(new IllegalStateException("no connection")).when(persistence).remove(any(), any());
+
+        assertThrows(IllegalStateException.class, () -> keyValueResolver.set("key", "value", null));
+        assertThat((String) keyValueResolver.get("key")).isEqualTo("value");
+        assertThrows(IllegalStateException.class, () -> keyValueResolver.remove("key"));
+
+        assertThat(keyValueResolver.getKeyValues("key")).isNull();
+        assertThat(events).extracting(ChangeEvent::getType, ChangeEvent::getPattern, ChangeEvent::getOldValue, ChangeEvent::getNewValue)
+                .containsExactly(
+                        tuple(Type.ADDED, "", null, "value"),
+                        tuple(Type.REMOVED, "", "value", null));
+    }
+
+    @Test
+    void reloadOfAKeyTellsAboutTheDifferences() {
+        keyValueResolver.set("key", "value", null);
+        keyValueResolver.set("key", "german value", null, "DE");
+        events.clear();
+        when(persistence.load(eq("key"), any())).thenAnswer(invocation -> {
+            KeyValues keyValues = new KeyValues("key", invocation.getArgument(1));
+            keyValues.put("changed value");
+            keyValues.put("austrian value", "AT");
+            return keyValues;
+        });
+
+        keyValueResolver.reload("key");
+
+        assertThat(events).extracting(ChangeEvent::getType, ChangeEvent::getPattern, ChangeEvent::getOldValue, ChangeEvent::getNewValue)
+                .containsExactlyInAnyOrder(
+                        tuple(Type.CHANGED, "", "value", "changed value"),
+                        tuple(Type.REMOVED, "DE|", "german value", null),
+                        tuple(Type.ADDED, "AT|", null, "austrian value"));
+    }
+
+    @Test
+    void removedListenerIsNotCalled() {
+        List<ChangeEvent> otherEvents = new ArrayList<>();
+        ChangeListener listener = otherEvents::addAll;
+        keyValueResolver.addChangeListener(listener);
+        keyValueResolver.removeChangeListener(listener);
+
+        keyValueResolver.set("key", "value", null);
+
+        assertThat(otherEvents).isEmpty();
+        assertThat(events).hasSize(1);
+    }
+}
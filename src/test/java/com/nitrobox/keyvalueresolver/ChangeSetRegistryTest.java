@@ -0,0 +1,56 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonList;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class ChangeSetRegistryTest {
+
+    private final ChangeSetRegistry registry = new ChangeSetRegistry();
+
+    @Test
+    void everyChangeSetGetsItsOwnBit() {
+        long bit1 = registry.bitOf("CS1");
+        long bit2 = registry.bitOf("CS2");
+        assertThat(Long.bitCount(bit1)).isEqualTo(1);
+        assertThat(bit1 & bit2).isZero();
+        assertThat(registry.bitOf("CS1")).isEqualTo(bit1);
+        assertThat(registry.size()).isEqualTo(2);
+    }
+
+    @Test
+    void maskContainsOnlyRegisteredActiveChangeSets() {
+        long bit1 = registry.bitOf("CS1");
+        long bit2 = registry.bitOf("CS2");
+        assertThat(registry.maskOf(asList("CS1", "CS2", "unknown"))).isEqualTo(bit1 | bit2);
+        assertThat(registry.size()).isEqualTo(2);
+    }
+
+    @Test
+    void changeSetsBeyondTheBitsOfAMaskHaveNoBit() {
+        for (int i = 0; i < Long.SIZE; i++) {
+            assertThat(registry.bitOf("CS" + i)).isNotZero();
+        }
+        assertThat(registry.bitOf("oneTooMany")).isZero();
+        assertThat(registry.maskOf(singletonList("oneTooMany"))).isZero();
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+class DeltaPersistenceTest {
+
+    private final DeltaPersistence persistence = mock(DeltaPersistence.class);
+
+    private static KeyValues keyValues(String key, DomainSpecificValueFactory domainSpecificValueFactory) {
+        KeyValues keyValues = new KeyValues(key, domainSpecificValueFactory);
+        keyValues.put("value of " + key);
+        keyValues.put("german value of " + key, "DE");
+        return keyValues;
+    }
+
+    @Test
+    void reloadAppliesOnlyTheChangesSinceTheLastLoad() {
+        when(persistence.currentVersion()).thenReturn(5L);
+        when(persistence.loadAll(any(DomainSpecificValueFactory.class))).thenAnswer(invocation -> List.of(
+                keyValues("key1", invocation.getArgument(0)), keyValues("key2", invocation.getArgument(0))));
+        Map<String, Collection<DomainSpecificValue>> changedValues = Map.of(
+                "key1", List.of(DomainSpecificValue.withoutChangeSet("changed german value", "DE")),
+                "key3", List.of(DomainSpecificValue.withoutChangeSet("value of key3")));
+        Map<String, Collection<DomainSpecificValue>> removedValues = Map.of(
+                "key2", List.of(DomainSpecificValue.withoutChangeSet(null), DomainSpecificValue.withoutChangeSet(null, "DE")));
+        when(persistence.changesSince(eq(5L), any())).thenReturn(
+                new PersistedChanges(7L, changedValues, removedValues, Map.of("key3", "new key")));
+        when(persistence.changesSince(eq(7L), any())).thenReturn(PersistedChanges.none(7L));
+        KeyValueResolver keyValueResolver = new KeyValueResolverImpl(persistence, "country");
+
+        keyValueResolver.reload();
+
+        assertThat((String) keyValueResolver.get("key1", "DE")).isEqualTo("changed german value");
+        assertThat((String) keyValueResolver.get("key1", "AT")).isEqualTo("value of key1");
+        assertThat(keyValueResolver.getKeyValues("key2")).isNull();
+        assertThat((String) keyValueResolver.get("key3")).isEqualTo("value of key3");
+        assertThat(keyValueResolver.getKeyValues("key3").getDescription()).isEqualTo("new key");
+        verify(persistence, never()).reload(anyCollection(), any());
+
+        keyValueResolver.reload();
+
+        verify(persistence).changesSince(eq(7L), any());
+        assertThat(keyValueResolver.getAllKeyValues()).extracting(KeyValues::getKey).containsExactlyInAnyOrder("key1", "key3");
+    }
+
+    @Test
+    void reloadIsCompleteWithoutAKnownVersion() {
+        when(persistence.currentVersion()).thenReturn(3L);
+        when(persistence.reload(anyCollection(), any())).thenAnswer(invocation -> List.of(keyValues("key", invocation.getArgument(1))));
+        when(persistence.changesSince(anyLong(), any())).thenReturn(PersistedChanges.none(3L));
+        KeyValueResolverImpl keyValueResolver = new KeyValueResolverImpl("country");
+        keyValueResolver.setPersistence(persistence);
+
+        keyValueResolver.reload();
+        keyValueResolver.reload();
+
+        assertThat((String) keyValueResolver.get("key", "DE")).isEqualTo("german value of key");
+        verify(persistence).reload(anyCollection(), any());
+        verify(persistence).changesSince(eq(3L), any());
+    }
+
+    @Test
+    void valuesRemovedAndAddedAgainAreKept() {
+        when(persistence.currentVersion()).thenReturn(5L);
+        when(persistence.loadAll(any(DomainSpecificValueFactory.class))).thenAnswer(invocation -> List.of(
+                keyValues("key1", invocation.getArgument(0)), keyValues("key2", invocation.getArgument(0))));
+        Map<String, Collection<DomainSpecificValue>> changedValues = Map.of(
+                "key1", List.of(DomainSpecificValue.withoutChangeSet("german value added again", "DE")),
+                "key2", List.of(DomainSpecificValue.withoutChangeSet("german value added again", "DE")));
+        Map<String, Collection<DomainSpecificValue>> removedValues = Map.of(
+                "key2", List.of(DomainSpecificValue.withoutChangeSet(null, "DE"))); // contained in both, though it should not be
+        when(persistence.changesSince(eq(5L), any())).thenReturn(new PersistedChanges(7L, changedValues, removedValues, Map.of()));
+        KeyValueResolver keyValueResolver = new KeyValueResolverImpl(persistence, "country");
+
+        keyValueResolver.reload();
+
+        assertThat((String) keyValueResolver.get("key1", "DE")).isEqualTo("german value added again");
+        assertThat((String) keyValueResolver.get("key2", "DE")).isEqualTo("german value added again");
+    }
+
+    @Test
+    void listenersAreToldAboutChangesOfKeysNotInMemory() {
+        when(persistence.currentVersion()).thenReturn(5L);
+        when(persistence.loadAll(anyCollection(), any())).thenAnswer(invocation -> {
+            KeyValues keyValues = new KeyValues("key", invocation.getArgument(1));
+            keyValues.put("hello");
+            return List.of(keyValues);
+        });
+        when(persistence.changesSince(eq(5L), any())).thenReturn(new PersistedChanges(7L,
+                Map.of("key", List.of(DomainSpecificValue.withoutChangeSet("hello"))), Map.of(), Map.of()));
+        KeyValueResolverImpl keyValueResolver = new KeyValueResolverImpl(persistence, "country");
+        List<ChangeEvent> events = new ArrayList<>();
+        keyValueResolver.setChangeListenerExecutor(Runnable::run);
+        keyValueResolver.addChangeListener(events::addAll);
+
+        keyValueResolver.reload();
+
+        assertThat((String) keyValueResolver.get("key")).isEqualTo("hello");
+        assertThat(events).extracting(ChangeEvent::getType, ChangeEvent::getKey, ChangeEvent::getNewValue)
+                .containsExactly(tuple(ChangeEvent.Type.ADDED, "key", "hello"));
+    }
+}
@@ -182,4 +182,36 @@ class DomainSpecificValueTest {
         final String[] domainValues = DomainSpecificValue.withPattern("val", null, "pat1|pat2|pat3|").getDomainValues();
         assertThat(domainValues).isEqualTo(new String[]{"pat1", "pat2", "pat3"});
     }
+
+    @Test
+    void primitiveValuesAreAvailableUnboxed() {
+        assertThat(DomainSpecificValue.withoutChangeSet(1, "dom").getInt()).isEqualTo(1);
+        assertThat(DomainSpecificValue.withChangeSet(2L, "cs", "dom").getLong()).isEqualTo(2L);
+        assertThat(DomainSpecificValue.withPattern(3.5, null, "dom|").getDouble()).isEqualTo(3.5);
+        assertThat(DomainSpecificValue.withoutChangeSet(true).getBoolean()).isTrue();
+    }
+
+    @Test
+    void primitiveValueFollowsSetValue() {
+        final DomainSpecificValue value = DomainSpecificValue.withoutChangeSet(1);
+        value.setValue(2);
+        assertThat(value.getInt()).isEqualTo(2);
+        assertThat(value.getValue()).isEqualTo(2);
+        value.setValue("text");
+        assertThrows(ClassCastException.class, value::getInt);
+    }
+
+    @Test
+    void typedGetterForValueOfOtherTypeThrows() {
+        assertThrows(ClassCastException.class, () -> DomainSpecificValue.withoutChangeSet("1").getInt());
+        assertThrows(ClassCastException.class, () -> DomainSpecificValue.withoutChangeSet(1).getLong());
+    }
+
+    @Test
+    void primitiveValueEqualsValueCreatedWithOtherType() {
+        final DomainSpecificValue value = DomainSpecificValue.withoutChangeSet(1, "dom");
+        final DomainSpecificValue changed = DomainSpecificValue.withoutChangeSet("text", "dom");
+        changed.setValue(1);
+        assertThat(value).isEqualTo(changed).hasSameHashCodeAs(changed);
+    }
 }
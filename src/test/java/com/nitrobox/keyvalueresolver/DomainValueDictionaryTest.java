@@ -0,0 +1,58 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class DomainValueDictionaryTest {
+
+    private final DomainValueDictionary dictionary = new DomainValueDictionary();
+
+    @Test
+    void wildcardHasAReservedId() {
+        assertThat(dictionary.lookup("*")).isEqualTo(DomainValueDictionary.WILDCARD);
+        assertThat(dictionary.encodePattern("*|*|")).containsExactly(DomainValueDictionary.WILDCARD, DomainValueDictionary.WILDCARD);
+    }
+
+    @Test
+    void equalDomainValuesGetTheSameId() {
+        final int[] encoded = dictionary.encodePattern("de|CH|de|");
+        assertThat(encoded[0]).isEqualTo(encoded[2]).isNotEqualTo(encoded[1]);
+        assertThat(dictionary.lookup("de")).isEqualTo(encoded[0]);
+        assertThat(dictionary.size()).isEqualTo(3);
+    }
+
+    @Test
+    void lookupDoesNotAddUnknownDomainValues() {
+        assertThat(dictionary.lookup("unknown")).isEqualTo(DomainValueDictionary.UNKNOWN);
+        assertThat(dictionary.size()).isEqualTo(1);
+    }
+
+    @Test
+    void encodedPatternsAreShared() {
+        assertThat(dictionary.encodePattern("a|*|b|")).isSameAs(dictionary.encodePattern(new String("a|*|b|")));
+        assertThat(dictionary.encodePattern("")).isEmpty();
+    }
+
+    @Test
+    void globsAreEncodedLiterally() {
+        assertThat(dictionary.encodePattern("de*|")[0]).isEqualTo(dictionary.lookup("de*")).isNotEqualTo(DomainValueDictionary.WILDCARD);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static java.util.stream.Collectors.toMap;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+class KeyValueResolverBulkTest {
+
+    private final Persistence persistence = mock(Persistence.class);
+    private final KeyValueResolverImpl keyValueResolver = new KeyValueResolverImpl(persistence, "country", "language");
+
+    @Test
+    void setAllSetsAllValues() {
+        keyValueResolver.setAll(List.of(
+                KeyValueEntry.withoutChangeSet("greeting", "Hello", "a greeting"),
+                KeyValueEntry.withoutChangeSet("greeting", "Hallo", null, "DE"),
+                KeyValueEntry.withChangeSet("greeting", "Moin", null, "north", "DE"),
+                KeyValueEntry.withoutChangeSet(" farewell ", "Bye", null)));
+
+        assertThat((String) keyValueResolver.get("greeting", "AT")).isEqualTo("Hello");
+        assertThat((String) keyValueResolver.get("greeting", "DE")).isEqualTo("Hallo");
+        assertThat((String) keyValueResolver.get("greeting", new MapBackedDomainResolver().set("country", "DE").set("language", "de")
+                .addActiveChangeSets("north"))).isEqualTo("Moin");
+        assertThat((String) keyValueResolver.get("farewell")).isEqualTo("Bye");
+        assertThat(keyValueResolver.getKeyValues("greeting").getDescription()).isEqualTo("a greeting");
+    }
+
+    @Test
+    void setAllLoadsUnknownKeysTogetherAndStoresAllValuesAtOnce() {
+        keyValueResolver.setAll(List.of(
+                KeyValueEntry.withoutChangeSet("key1", "value1", null),
+                KeyValueEntry.withoutChangeSet("key1", "value1DE", null, "DE"),
+                KeyValueEntry.withoutChangeSet("key2", "value2", null)));
+
+        verify(persistence).loadAll(eq(Set.of("key1", "key2")), any());
+        verify(persistence, never()).load(any(), any());
+        ArgumentCaptor<Map<KeyValues, Collection<DomainSpecificValue>>> stored = ArgumentCaptor.forClass(Map.class);
+        verify(persistence).storeAll(stored.capture());
+        assertThat(stored.getValue()).hasSize(2);
+        assertThat(stored.getValue().values().stream().mapToInt(Collection::size).sum()).isEqualTo(3);
+        verify(persistence, never()).store(any(), any(), any());
+    }
+
+    @Test
+    void removeAllRemovesValuesAndKeysWithoutValues() {
+        keyValueResolver.set("key1", "value1", null);
+        keyValueResolver.set("key1", "value1DE", null, "DE");
+        keyValueResolver.set("key2", "value2", null);
+
+        keyValueResolver.removeAll(List.of(KeyValueEntry.forRemoval("key1", null, "DE"), KeyValueEntry.forRemoval("key2", null)));
+
+        assertThat((String) keyValueResolver.get("key1", "DE")).isEqualTo("value1");
+        assertThat(keyValueResolver.getKeyValues("key2")).isNull();
+        ArgumentCaptor<Map<KeyValues, Collection<DomainSpecificValue>>> removed = ArgumentCaptor.forClass(Map.class);
+        verify(persistence).removeAll(removed.capture());
+        assertThat(removed.getValue().entrySet().stream().collect(toMap(entry -> entry.getKey().getKey(), Map.Entry::getValue)))
+                .isEqualTo(Map.of("key1", List.of(DomainSpecificValue.withoutChangeSet("value1DE", "DE")), "key2",
+                        List.of(DomainSpecificValue.withoutChangeSet("value2"))));
+        verify(persistence).remove("key2");
+        verify(persistence, never()).remove("key1");
+    }
+
+    @Test
+    void otherKeysCanBeSetWhileValuesAreStored() {
+        doAnswer(invocation -> {
+            assertTimeoutPreemptively(Duration.ofSeconds(5),
+                    () -> CompletableFuture.runAsync(() -> keyValueResolver.set("other", "value", null)).join());
+            return null;
+        }).when(persistence).storeAll(any());
+
+        keyValueResolver.setAll(List.of(KeyValueEntry.withoutChangeSet("key", "value", null)));
+
+        assertThat((String) keyValueResolver.get("other")).isEqualTo("value");
+        assertThat((String) keyValueResolver.get("key")).isEqualTo("value");
+    }
+
+    @Test
+    void keysOfEntriesMustNotBeEmpty() {
+        assertThrows(IllegalArgumentException.class, () -> KeyValueEntry.withoutChangeSet("", "value", null));
+        assertThrows(IllegalArgumentException.class, () -> KeyValueEntry.withoutChangeSet(null, "value", null));
+    }
+}
@@ -42,6 +42,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -114,6 +115,73 @@ class KeyValueResolverImplTest {
         verify(persistenceMock).load(eq("key"), any(DomainSpecificValueFactory.class));
     }
 
+    @Test
+    void typedGettersGiveStoredPrimitiveValues() {
+        keyValueResolver.addDomains("domain1");
+        keyValueResolver.set("int", 1, null);
+        keyValueResolver.set("int", 2, null, "domain1");
+        keyValueResolver.set("long", 3L, null);
+        keyValueResolver.set("double", 4.5, null);
+        keyValueResolver.set("boolean", true, null);
+        assertThat(keyValueResolver.getInt("int", resolverMock)).isEqualTo(2);
+        assertThat(keyValueResolver.getInt("int", "other")).isEqualTo(1);
+        assertThat(keyValueResolver.getLong("long", resolverMock)).isEqualTo(3L);
+        assertThat(keyValueResolver.getDouble("double", resolverMock)).isEqualTo(4.5);
+        assertThat(keyValueResolver.getBoolean("boolean", resolverMock)).isTrue();
+    }
+
+    @Test
+    void typedGettersGiveDefaultWithoutValue() {
+        keyValueResolver.set("null", null, null);
+        assertThat(keyValueResolver.getInt("unknown", resolverMock)).isZero();
+        assertThat(keyValueResolver.getIntOrDefault("unknown", 7, resolverMock)).isEqualTo(7);
+        assertThat(keyValueResolver.getLongOrDefault("null", 8L, resolverMock)).isEqualTo(8L);
+        assertThat(keyValueResolver.getDoubleOrDefault("unknown", 9.5)).isEqualTo(9.5);
+        assertThat(keyValueResolver.getBooleanOrDefault("null", true, resolverMock)).isTrue();
+        assertThat(keyValueResolver.getBoolean("unknown")).isFalse();
+    }
+
+    @Test
+    void typedGetterForValueOfOtherTypeThrows() {
+        keyValueResolver.set("key", "value", null);
+        assertThrows(ClassCastException.class, () -> keyValueResolver.getInt("key", resolverMock));
+    }
+
+    @Test
+    void typedGettersUseTheCache() {
+        ResolvedValueCache cache = new ResolvedValueCache(10);
+        keyValueResolver.setResolvedValueCache(cache);
+        keyValueResolver.set("key", 42, null);
+        assertThat(keyValueResolver.getInt("key", resolverMock)).isEqualTo(42);
+        assertThat(keyValueResolver.getInt("key", resolverMock)).isEqualTo(42);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        keyValueResolver.set("key", 43, null);
+        assertThat(keyValueResolver.getInt("key", resolverMock)).isEqualTo(43);
+    }
+
+    @Test
+    void getAllGivesValuesOfExistingKeys() {
+        keyValueResolver.addDomains("domain1");
+        keyValueResolver.set("key1", "value1", null);
+        keyValueResolver.set("key2", "value2", null, "domain1");
+        keyValueResolver.set("key3", "value3", null, "other");
+        Map<String, String> values = keyValueResolver.getAll(List.of("key1", " key2", "key3", "unknown"), resolverMock);
+        assertThat(values).containsOnly(entry("key1", "value1"), entry(" key2", "value2"));
+    }
+
+    @Test
+    void getAllLoadsUnknownKeysTogether() {
+        keyValueResolver.set("key1", "value1", null);
+        keyValueResolver.setPersistence(persistenceMock);
+        KeyValues keyValues2 = new KeyValues("key2", new DefaultDomainSpecificValueFactory(), null);
+        keyValues2.put("value2");
+        when(persistenceMock.loadAll(eq(Set.of("key2", "key3")), any(DomainSpecificValueFactory.class))).thenReturn(List.of(keyValues2));
+        Map<String, String> values = keyValueResolver.getAll(List.of("key1", "key2", "key3"), resolverMock);
+        assertThat(values).containsOnly(entry("key1", "value1"), entry("key2", "value2"));
+        assertThat((String) keyValueResolver.get("key2", resolverMock)).isEqualTo("value2");
+        verify(persistenceMock, never()).load(any(), any());
+    }
+
     @Test
     void gettingAPropertyThatDoesNotExistGivesDefaultValue() {
         String text = "default";
@@ -291,6 +359,43 @@ class KeyValueResolverImplTest {
         verifyNoMoreInteractions(mockResolver);
     }
 
+    @Test
+    void preparedContextRequestsDomainValuesOnlyOnce() {
+        keyValueResolver.addDomains("domain1", "domain2");
+        DomainResolver mockResolver = mock(DomainResolver.class);
+        when(mockResolver.getDomainValue(anyString())).thenAnswer(invocationOnMock -> invocationOnMock.getArguments()[0]);
+        keyValueResolver.set("key1", "default1", null);
+        keyValueResolver.set("key1", "overridden1", null, "domain1");
+        keyValueResolver.set("key2", "default2", null);
+        ResolutionContext context = keyValueResolver.prepare(mockResolver);
+        assertThat((String) keyValueResolver.get("key1", context)).isEqualTo("overridden1");
+        assertThat((String) keyValueResolver.get("key2", context)).isEqualTo("default2");
+        assertThat(keyValueResolver.getOrDefault("unknownKey", "default", context)).isEqualTo("default");
+        verify(mockResolver).getDomainValue("domain1");
+        verify(mockResolver).getDomainValue("domain2");
+        verify(mockResolver).getActiveChangeSets();
+        verifyNoMoreInteractions(mockResolver);
+    }
+
+    @Test
+    void preparedContextSeesValuesSetAfterwards() {
+        keyValueResolver.addDomains("domain1", "domain2");
+        ResolutionContext context = keyValueResolver.prepare(resolverMock);
+        ResolutionContext changeSetContext = keyValueResolver.prepare(new MapBackedDomainResolver()
+                .set("domain1", "domain1").set("domain2", "domain2").addActiveChangeSets("changeSet"));
+        keyValueResolver.set("key", "value", null, "domain1", "domain2");
+        keyValueResolver.setWithChangeSet("key", "changed", null, "changeSet", "domain1", "domain2");
+        assertThat((String) keyValueResolver.get("key", context)).isEqualTo("value");
+        assertThat((String) keyValueResolver.get("key", changeSetContext)).isEqualTo("changed");
+    }
+
+    @Test
+    void preparedContextMustMatchTheDomains() {
+        ResolutionContext context = keyValueResolver.prepare(resolverMock);
+        keyValueResolver.addDomains("domain1");
+        assertThrows(IllegalArgumentException.class, () -> keyValueResolver.get("key", context));
+    }
+
     @Test
     void wildcardIsResolvedWhenOtherDomainsMatch() {
         keyValueResolver.addDomains("domain1", "domain2");
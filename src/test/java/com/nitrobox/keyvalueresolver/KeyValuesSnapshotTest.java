@@ -0,0 +1,139 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class KeyValuesSnapshotTest {
+
+    private final DomainSpecificValueFactory domainSpecificValueFactory = new DefaultDomainSpecificValueFactory();
+    private final ValueCodec valueCodec = new DefaultValueCodec();
+
+    @Test
+    void snapshotContainsAllKeysDescriptionsAndValues() throws IOException {
+        KeyValues greeting = new KeyValues("greeting", domainSpecificValueFactory, "a greeting");
+        greeting.put("Hello");
+        greeting.put("Gr\u00fc\u00df Gott", "AT", "*");
+        greeting.putWithChangeSet("summer", "Servus", "AT");
+        KeyValues typed = new KeyValues("typed", domainSpecificValueFactory);
+        typed.put(42, "a");
+        typed.put(42L, "b");
+        typed.put(4.2, "c");
+        typed.put(4.2f, "d");
+        typed.put(true, "e");
+        typed.put(new BigDecimal("4.20"), "f");
+
+        List<KeyValues> read = writeAndRead(List.of(greeting, typed));
+
+        assertThat(read).hasSize(2);
+        assertThat(read.get(0).getKey()).isEqualTo("greeting");
+        assertThat(read.get(0).getDescription()).isEqualTo("a greeting");
+        assertThat(read.get(0).getDomainSpecificValues()).containsExactlyElementsOf(greeting.getDomainSpecificValues());
+        assertThat(read.get(1).getDescription()).isEqualTo(typed.getDescription()); // a missing description is an empty one
+        assertThat(read.get(1).getDomainSpecificValues()).containsExactlyElementsOf(typed.getDomainSpecificValues());
+    }
+
+    @Test
+    void truncatedSnapshotIsDetected() throws IOException {
+        KeyValues keyValues = new KeyValues("key", domainSpecificValueFactory);
+        keyValues.put("value");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KeyValuesSnapshot.write(List.of(keyValues), out, valueCodec);
+        byte[] truncated = Arrays.copyOf(out.toByteArray(), out.size() - 2);
+
+        assertThatThrownBy(() -> KeyValuesSnapshot.read(new ByteArrayInputStream(truncated), domainSpecificValueFactory, valueCodec))
+                .isInstanceOf(IOException.class);
+        assertThatThrownBy(() -> KeyValuesSnapshot.read(new ByteArrayInputStream(new byte[8]), domainSpecificValueFactory, valueCodec))
+                .isInstanceOf(IOException.class).hasMessage("Not a KeyValueResolver snapshot");
+    }
+
+    @Test
+    void valuesOfUnknownTypesAreRejected() {
+        KeyValues keyValues = new KeyValues("key", domainSpecificValueFactory);
+        keyValues.put(new Object());
+
+        assertThatThrownBy(() -> KeyValuesSnapshot.write(List.of(keyValues), new ByteArrayOutputStream(), valueCodec))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void resolverStartsFromSnapshotAndCatchesUpFromPersistence(@TempDir Path directory) throws IOException {
+        KeyValueResolverImpl keyValueResolver = new KeyValueResolverImpl("country");
+        keyValueResolver.set("key", "value", "description");
+        keyValueResolver.set("key", "german value", null, "DE");
+        Path file = directory.resolve("values.snapshot");
+        keyValueResolver.writeSnapshot(file, valueCodec);
+
+        KeyValueResolverImpl restarted = new KeyValueResolverImpl("country");
+        restarted.loadSnapshot(file, valueCodec);
+        Persistence persistence = mock(Persistence.class);
+        when(persistence.reload(anyCollection(), any())).thenAnswer(invocation -> invocation.getArgument(0));
+        restarted.setPersistence(persistence);
+        restarted.reload();
+
+        assertThat((String) restarted.get("key", "DE")).isEqualTo("german value");
+        assertThat(restarted.getKeyValues("key").getDescription()).isEqualTo("description");
+        verify(persistence, never()).loadAll(any(DomainSpecificValueFactory.class));
+        verify(persistence).reload(anyCollection(), any());
+    }
+
+    @Test
+    void resolverStartedFromSnapshotAsksForTheChangesSinceTheSnapshot(@TempDir Path directory) throws IOException {
+        DeltaPersistence persistence = mock(DeltaPersistence.class);
+        when(persistence.currentVersion()).thenReturn(5L);
+        when(persistence.changesSince(anyLong(), any())).thenReturn(PersistedChanges.none(7L));
+        KeyValueResolverImpl keyValueResolver = new KeyValueResolverImpl(persistence, "country");
+        keyValueResolver.set("key", "value", null);
+        Path file = directory.resolve("values.snapshot");
+        keyValueResolver.writeSnapshot(file, valueCodec);
+
+        KeyValueResolverImpl restarted = new KeyValueResolverImpl("country");
+        restarted.loadSnapshot(file, valueCodec);
+        restarted.setPersistence(persistence);
+        restarted.reload();
+
+        assertThat((String) restarted.get("key")).isEqualTo("value");
+        verify(persistence).changesSince(eq(5L), any());
+        verify(persistence, never()).reload(anyCollection(), any());
+    }
+
+    private List<KeyValues> writeAndRead(List<KeyValues> keyValues) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        KeyValuesSnapshot.write(keyValues, out, valueCodec);
+        return KeyValuesSnapshot.read(new ByteArrayInputStream(out.toByteArray()), domainSpecificValueFactory, valueCodec).getKeyValues();
+    }
+}
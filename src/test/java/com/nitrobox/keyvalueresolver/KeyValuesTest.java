@@ -111,6 +111,28 @@ class KeyValuesTest {
         assertThat(keyValues.get(singletonList("domain"), "default", resolver)).isEqualTo("text");
     }
 
+    @Test
+    void initialValuesAreSortedAndOfEqualValuesTheFirstIsKept() {
+        KeyValues keyValues = new KeyValues("key", new DefaultDomainSpecificValueFactory(), null, List.of(
+                DomainSpecificValue.withoutChangeSet("value1", "dom1"),
+                DomainSpecificValue.withoutChangeSet("value2", "dom1", "dom2"),
+                DomainSpecificValue.withoutChangeSet("other", "dom1")));
+        assertThat(keyValues.getDomainSpecificValues()).containsExactly(
+                DomainSpecificValue.withoutChangeSet("value2", "dom1", "dom2"),
+                DomainSpecificValue.withoutChangeSet("value1", "dom1"));
+    }
+
+    @Test
+    void gettingAllDomainSpecificValuesGivesASnapshot() {
+        keyValues.put("value1", "dom1");
+        Set<DomainSpecificValue> domainSpecificValues = keyValues.getDomainSpecificValues();
+        keyValues.put("value2", "dom2");
+        keyValues.remove(null, new String[]{"dom1"});
+        assertThat(domainSpecificValues).containsExactly(DomainSpecificValue.withoutChangeSet("value1", "dom1"));
+        assertThat(keyValues.getDomainSpecificValues()).containsExactly(DomainSpecificValue.withoutChangeSet("value2", "dom2"));
+        assertThrows(UnsupportedOperationException.class, () -> domainSpecificValues.iterator().remove());
+    }
+
     @Test
     void whenNoValuesAreDefinedGettingAllDomainSpecificValuesGivesAnEmptySet() {
         Set<DomainSpecificValue> domainSpecificValues = keyValues.getDomainSpecificValues();
@@ -307,4 +329,89 @@ class KeyValuesTest {
                 DomainSpecificValue.withoutChangeSet("value_3", "domain1", "domainX")
         );
     }
+
+    @Test
+    void keysWithManyValuesAreResolvedThroughTheIndexWithTheSamePrecedence() {
+        fillWithPartnerOverrides();
+        keyValues.put("wildcarded", "*", "*", "domain3");
+        keyValues.put("specific", "domain1", "*", "domain3");
+        keyValues.put("lessSpecific", "domain1", "domain2");
+        assertThat((String) keyValues.get(asList("domain1", "domain2", "domain3"), null, resolver)).isEqualTo("specific");
+        assertThat((String) keyValues.get(asList("partner7", "domain2", "domain3"), null, resolver)).isEqualTo("wildcarded");
+        assertThat((String) keyValues.get(asList("partner7", "x"), null, resolver)).isEqualTo("partner7");
+        assertThat(keyValues.get(asList("unknown", "x"), "default", resolver)).isEqualTo("default");
+    }
+
+    @Test
+    void indexRespectsChangeSets() {
+        fillWithPartnerOverrides();
+        keyValues.putWithChangeSet("changeSet", "changed", "partner7");
+        assertThat((String) keyValues.get(singletonList("partner7"), null, resolver)).isEqualTo("partner7");
+        DomainResolver changeSetResolver = new MapBackedDomainResolver().set("partner7", "partner7").addActiveChangeSets("changeSet");
+        assertThat((String) keyValues.get(singletonList("partner7"), null, changeSetResolver)).isEqualTo("changed");
+    }
+
+    @Test
+    void indexIsUpdatedWhenValuesChange() {
+        fillWithPartnerOverrides();
+        assertThat((String) keyValues.get(singletonList("partner7"), null, resolver)).isEqualTo("partner7");
+        keyValues.put("changed", "partner7");
+        assertThat((String) keyValues.get(singletonList("partner7"), null, resolver)).isEqualTo("changed");
+        keyValues.remove(null, new String[]{"partner7"});
+        assertThat(keyValues.get(singletonList("partner7"), "default", resolver)).isEqualTo("default");
+    }
+
+    @Test
+    void resolverMayQueryKeyValuesWhileResolvingDomainValues() {
+        KeyValues otherKeyValues = new KeyValues("other", new DefaultDomainSpecificValueFactory());
+        otherKeyValues.put("resolvedFromOther", "dom1");
+        DomainResolver nestedResolver = new MapBackedDomainResolver() {
+            @Override
+            public String getDomainValue(String domain) {
+                return "dom2".equals(domain) ? otherKeyValues.get(singletonList("dom1"), null, resolver) : "x";
+            }
+        };
+        keyValues.put("value", "x", "resolvedFromOther");
+        assertThat((String) keyValues.get(asList("dom1", "dom2"), null, nestedResolver)).isEqualTo("value");
+    }
+
+    @Test
+    void valuesAreResolvedWithASharedDictionary() {
+        DomainValueDictionary dictionary = new DomainValueDictionary();
+        keyValues.put("value", "domain1", "*", "domain3");
+        assertThat((String) keyValues.get(asList("domain1", "domain2", "domain3"), null, resolver)).isEqualTo("value");
+        keyValues.setDomainValueDictionary(dictionary);
+        assertThat((String) keyValues.get(asList("domain1", "domain2", "domain3"), null, resolver)).isEqualTo("value");
+        assertThat(keyValues.get(asList("domain1", "domain2", "other"), "default", resolver)).isEqualTo("default");
+        assertThat(dictionary.lookup("domain1")).isNotEqualTo(DomainValueDictionary.UNKNOWN);
+        assertThat(dictionary.lookup("other")).isEqualTo(DomainValueDictionary.UNKNOWN);
+    }
+
+    @Test
+    void copyMatchesDomainValuesLiterally() {
+        keyValues.put("value_1", "a.c");
+        keyValues.put("value_2", "abc");
+        final KeyValues copy = keyValues.copy(singletonList("dom1"), new MapBackedDomainResolver().set("dom1", "a.c"));
+        assertThat(copy.getDomainSpecificValues()).containsExactly(DomainSpecificValue.withoutChangeSet("value_1", "a.c"));
+    }
+
+    @Test
+    void valuesOfMoreChangeSetsThanBitsInTheMaskAreResolved() {
+        keyValues.put("default", "dom1");
+        for (int i = 0; i < 2 * Long.SIZE; i++) {
+            keyValues.putWithChangeSet("CS" + i, "changed" + i, "dom1");
+        }
+        MapBackedDomainResolver changeSetResolver = new MapBackedDomainResolver().set("dom1", "dom1");
+        assertThat((String) keyValues.get(singletonList("dom1"), null, changeSetResolver)).isEqualTo("default");
+        changeSetResolver.addActiveChangeSets("CS99");
+        assertThat((String) keyValues.get(singletonList("dom1"), null, changeSetResolver)).isEqualTo("changed99");
+        changeSetResolver.addActiveChangeSets("CS1");
+        assertThat((String) keyValues.get(singletonList("dom1"), null, changeSetResolver)).isEqualTo("changed1");
+    }
+
+    private void fillWithPartnerOverrides() {
+        for (int i = 0; i < KeyValues.INDEX_THRESHOLD; i++) {
+            keyValues.put("partner" + i, "partner" + i);
+        }
+    }
 }
@@ -46,6 +46,19 @@ class MapBackedDomainResolverTest {
         assertThat(resolver.getActiveChangeSets()).containsExactlyInAnyOrder("CS1", "CS2", "CS3");
     }
 
+    @Test
+    void activeChangeSetMaskFollowsChangeSetsAndRegistry() {
+        ChangeSetRegistry registry = new ChangeSetRegistry();
+        long bit1 = registry.bitOf("CS1");
+        resolver.addActiveChangeSets("CS1", "CS2");
+        assertThat(resolver.getActiveChangeSetMask(registry)).isEqualTo(bit1);
+        long bit2 = registry.bitOf("CS2");
+        assertThat(resolver.getActiveChangeSetMask(registry)).isEqualTo(bit1 | bit2);
+        long bit3 = registry.bitOf("CS3");
+        resolver.addActiveChangeSets("CS3");
+        assertThat(resolver.getActiveChangeSetMask(registry)).isEqualTo(bit1 | bit2 | bit3);
+    }
+
     @Test
     void toStringTest() {
         assertThat(resolver).hasToString("com.nitrobox.keyvalueresolver.MapBackedDomainResolver with {dom1=val1, dom2=val2}");
@@ -0,0 +1,130 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class MappedKeyValuesFileTest {
+
+    private final DomainSpecificValueFactory domainSpecificValueFactory = new DefaultDomainSpecificValueFactory();
+    private final ValueCodec valueCodec = new DefaultValueCodec();
+    @TempDir
+    Path directory;
+
+    @Test
+    void keyValuesAreDecodedFromTheFile() throws IOException {
+        List<KeyValues> keyValues = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            KeyValues kv = new KeyValues("key" + i, domainSpecificValueFactory, "description " + i);
+            kv.put("value " + i);
+            kv.put(i, "DE");
+            kv.putWithChangeSet("summer", true, "AT", "*");
+            keyValues.add(kv);
+        }
+        Path file = directory.resolve("values.mapped");
+        MappedKeyValuesFile.write(keyValues, 42L, file, valueCodec, 8); // segments of 256 bytes
+
+        MappedKeyValuesFile mappedFile = MappedKeyValuesFile.open(file, valueCodec);
+
+        assertThat(mappedFile.size()).isEqualTo(1000);
+        assertThat(mappedFile.getChangesVersion()).isEqualTo(42L);
+        for (KeyValues kv : keyValues) {
+            KeyValues decoded = mappedFile.get(kv.getKey(), domainSpecificValueFactory);
+            assertThat(decoded.getDescription()).isEqualTo(kv.getDescription());
+            assertThat(decoded.getDomainSpecificValues()).containsExactlyElementsOf(kv.getDomainSpecificValues());
+        }
+        assertThat(mappedFile.get("unknown", domainSpecificValueFactory)).isNull();
+        assertThat(mappedFile.containsKey("key999")).isTrue();
+        List<String> keys = new ArrayList<>();
+        for (Iterator<String> iterator = mappedFile.keys(); iterator.hasNext(); ) {
+            keys.add(iterator.next());
+        }
+        assertThat(keys).hasSize(1000).contains("key0", "key999");
+    }
+
+    @Test
+    void truncatedFileIsDetected() throws IOException {
+        KeyValues keyValues = new KeyValues("key", domainSpecificValueFactory);
+        keyValues.put("value");
+        Path file = directory.resolve("values.mapped");
+        MappedKeyValuesFile.write(List.of(keyValues), file, valueCodec);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 2));
+
+        assertThatThrownBy(() -> MappedKeyValuesFile.open(file, valueCodec)).isInstanceOf(IOException.class);
+        Files.write(file, new byte[64]);
+        assertThatThrownBy(() -> MappedKeyValuesFile.open(file, valueCodec))
+                .isInstanceOf(IOException.class).hasMessage("Not a mapped KeyValues file");
+    }
+
+    @Test
+    void tableExceedingTheFileIsDetected() throws IOException {
+        KeyValues keyValues = new KeyValues("key", domainSpecificValueFactory);
+        keyValues.put("value");
+        Path file = directory.resolve("values.mapped");
+        MappedKeyValuesFile.write(List.of(keyValues), file, valueCodec);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(16, 1 << 20); // table size
+        Files.write(file, bytes);
+
+        assertThatThrownBy(() -> MappedKeyValuesFile.open(file, valueCodec))
+                .isInstanceOf(IOException.class).hasMessage("Mapped KeyValues file is corrupt, invalid header");
+    }
+
+    @Test
+    void resolverReadsAndChangesMappedValues() throws IOException {
+        KeyValueResolverImpl keyValueResolver = new KeyValueResolverImpl("country");
+        keyValueResolver.set("key", "value", "description");
+        keyValueResolver.set("key", "german value", null, "DE");
+        keyValueResolver.set("other", "other value", null);
+        keyValueResolver.setWithChangeSet("summer", "summer value", null, "summer");
+        Path file = directory.resolve("values.mapped");
+        keyValueResolver.writeMapped(file, valueCodec);
+
+        KeyValueResolverImpl mapped = new KeyValueResolverImpl("country");
+        mapped.loadMapped(file, valueCodec);
+
+        assertThat((String) mapped.get("key", "DE")).isEqualTo("german value");
+        assertThat(mapped.getKeyValues("key").getDescription()).isEqualTo("description");
+        assertThat(mapped.getAllKeyValues()).hasSize(3);
+
+        mapped.set("key", "austrian value", null, "AT");
+        mapped.removeKey("other");
+        mapped.removeChangeSet("summer");
+        mapped.set("new", "new value", null);
+
+        assertThat((String) mapped.get("key", "AT")).isEqualTo("austrian value");
+        assertThat((String) mapped.get("key", "DE")).isEqualTo("german value");
+        assertThat((String) mapped.get("other")).isNull();
+        assertThat(mapped.getKeyValues("summer").isEmpty()).isTrue();
+        assertThat((String) mapped.get("new")).isEqualTo("new value");
+        assertThat(mapped.getAllKeyValues()).extracting(KeyValues::getKey).containsExactlyInAnyOrder("key", "summer", "new");
+    }
+}
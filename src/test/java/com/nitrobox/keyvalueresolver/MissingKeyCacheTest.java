@@ -0,0 +1,116 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class MissingKeyCacheTest {
+
+    private final Persistence persistence = mock(Persistence.class);
+    private final AtomicLong nanoTime = new AtomicLong();
+    private final MissingKeyCache cache = new MissingKeyCache(10, Duration.ofSeconds(60), nanoTime::get);
+    private KeyValueResolverImpl keyValueResolver;
+
+    @BeforeEach
+    void before() {
+        keyValueResolver = new KeyValueResolverImpl(persistence);
+        keyValueResolver.setMissingKeyCache(cache);
+    }
+
+    @Test
+    void sizeAndTimeToLiveMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new MissingKeyCache(0, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> new MissingKeyCache(10, Duration.ZERO));
+    }
+
+    @Test
+    void aMissingKeyIsLoadedOnlyOnce() {
+        assertThat((String) keyValueResolver.get("missing")).isNull();
+        assertThat((String) keyValueResolver.get("missing")).isNull();
+        verify(persistence, times(1)).load(eq("missing"), any());
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+        assertThat(cache.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void aMissingKeyIsLoadedAgainAfterTheTimeToLive() {
+        keyValueResolver.get("missing");
+        nanoTime.addAndGet(Duration.ofSeconds(60).toNanos());
+        keyValueResolver.get("missing");
+        verify(persistence, times(2)).load(eq("missing"), any());
+        assertThat(cache.getHitCount()).isZero();
+    }
+
+    @Test
+    void settingAValueForgetsTheMissingKey() {
+        keyValueResolver.get("missing");
+        keyValueResolver.set("missing", "value", null);
+        assertThat(cache.getSize()).isZero();
+        assertThat((String) keyValueResolver.get("missing")).isEqualTo("value");
+    }
+
+    @Test
+    void reloadingAKeyForgetsTheMissingKey() {
+        keyValueResolver.get("missing");
+        KeyValues keyValues = new KeyValues("missing", new DefaultDomainSpecificValueFactory());
+        keyValues.put("value");
+        when(persistence.load(eq("missing"), any())).thenReturn(keyValues);
+        keyValueResolver.reload("missing");
+        assertThat(cache.getSize()).isZero();
+        assertThat((String) keyValueResolver.get("missing")).isEqualTo("value");
+    }
+
+    @Test
+    void missingKeysOfGetAllAreRemembered() {
+        KeyValues keyValues = new KeyValues("present", new DefaultDomainSpecificValueFactory());
+        keyValues.put("value");
+        when(persistence.loadAll(anyCollection(), any())).thenReturn(List.of(keyValues));
+        keyValueResolver.getAll(List.of("present", "missing"), keyValueResolver.resolverFor());
+        keyValueResolver.getAll(List.of("present", "missing"), keyValueResolver.resolverFor());
+        verify(persistence, times(1)).loadAll(eq(Set.of("present", "missing")), any());
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void theCacheIsBounded() {
+        for (int i = 0; i < 25; i++) {
+            keyValueResolver.get("missing" + i);
+            nanoTime.incrementAndGet();
+        }
+        assertThat(cache.getSize()).isLessThanOrEqualTo(10);
+        assertThat(cache.getEvictionCount()).isPositive();
+        assertThat((String) keyValueResolver.get("missing24")).isNull();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Measures the read throughput of a KeyValueResolver with 1 to 64 reader threads. Run it manually, optionally with the number of
+ * seconds to measure each thread count as argument. With reads that take no shared lock, the throughput should grow with the number of
+ * threads up to the number of available cores.
+ */
+public class ReadScalingTestMain {
+
+    private static final int KEYS = 10_000;
+    private static final int MAX_THREADS = 64;
+
+    public static void main(String[] args) throws InterruptedException {
+        final long seconds = args.length > 0 ? Long.parseLong(args[0]) : 2;
+        final KeyValueResolver keyValueResolver = new KeyValueResolverImpl("country", "language");
+        final String[] keys = new String[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = "key" + i;
+            keyValueResolver.set(keys[i], "default", null);
+            keyValueResolver.set(keys[i], "german", null, "DE", "de");
+            keyValueResolver.set(keys[i], "austrian", null, "AT");
+        }
+        final MapBackedDomainResolver resolver = new MapBackedDomainResolver().set("country", "DE").set("language", "de");
+
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+        measure(keyValueResolver, keys, resolver, 1, seconds); // warm up
+        for (int threads = 1; threads <= MAX_THREADS; threads *= 2) {
+            final long reads = measure(keyValueResolver, keys, resolver, threads, seconds);
+            System.out.printf("threads: %2d  reads/s: %,15d  reads/s per thread: %,12d%n", threads, reads / seconds,
+                    reads / seconds / threads);
+        }
+    }
+
+    private static long measure(KeyValueResolver keyValueResolver, String[] keys, DomainResolver resolver, int threads, long seconds)
+            throws InterruptedException {
+        final LongAdder reads = new LongAdder();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final List<Thread> readers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int offset = t * 7919 % KEYS;
+            final Thread reader = new Thread(() -> {
+                awaitQuietly(start);
+                long count = 0;
+                int i = offset;
+                while (running.get()) {
+                    if (keyValueResolver.get(keys[i], resolver) == null) {
+                        throw new IllegalStateException("value expected");
+                    }
+                    i = i + 1 == KEYS ? 0 : i + 1;
+                    count++;
+                }
+                reads.add(count);
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        start.countDown();
+        TimeUnit.SECONDS.sleep(seconds);
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        return reads.sum();
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+class ReadWriteLockToolTest {
+
+    private final ReadWriteLockTool lock = new ReadWriteLockTool();
+
+    @Test
+    void acquisitionsAreCounted() {
+        assertThat(lock.readLocked(() -> "value")).isEqualTo("value");
+        lock.readLocked(() -> {
+        });
+        lock.writeLocked(() -> {
+        });
+        assertThat(lock.getReadLockCount()).isEqualTo(2);
+        assertThat(lock.getWriteLockCount()).isEqualTo(1);
+        assertThat(lock.getContendedReadLockCount()).isZero();
+        assertThat(lock.getContendedWriteLockCount()).isZero();
+    }
+
+    @Test
+    void waitingForTheLockIsCountedAsContention() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread writer = new Thread(() -> lock.writeLocked(() -> {
+            locked.countDown();
+            awaitQuietly(release);
+        }));
+        writer.start();
+        locked.await(5, TimeUnit.SECONDS);
+        Thread reader = new Thread(() -> lock.readLocked(() -> {
+        }));
+        reader.start();
+        while (lock.getContendedReadLockCount() == 0 && reader.isAlive()) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        writer.join();
+        reader.join();
+        assertThat(lock.getContendedReadLockCount()).isEqualTo(1);
+        assertThat(lock.getContendedWriteLockCount()).isZero();
+    }
+
+    @Test
+    void readersDoNotGetAheadOfAWaitingWriter() throws InterruptedException {
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        List<String> order = new CopyOnWriteArrayList<>();
+        Thread firstReader = new Thread(() -> lock.readLocked(() -> {
+            locked.countDown();
+            awaitQuietly(release);
+        }));
+        firstReader.start();
+        locked.await(5, TimeUnit.SECONDS);
+        Thread writer = new Thread(() -> lock.writeLocked(() -> {
+            order.add("writer");
+        }));
+        writer.start();
+        while (!lock.hasQueuedThreads()) {
+            Thread.sleep(1);
+        }
+        Thread reader = new Thread(() -> lock.readLocked(() -> {
+            order.add("reader");
+        }));
+        reader.start();
+        reader.join(100);
+        assertThat(order).isEmpty();
+        release.countDown();
+        firstReader.join();
+        writer.join();
+        reader.join();
+        assertThat(order).containsExactly("writer", "reader");
+        assertThat(lock.getContendedReadLockCount()).isEqualTo(1);
+        assertThat(lock.getContendedWriteLockCount()).isEqualTo(1);
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Collection;
+import java.util.List;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class ResolvedValueCacheTest {
+
+    private final KeyValueResolverImpl keyValueResolver = new KeyValueResolverImpl("dom1", "dom2");
+    private final ResolvedValueCache cache = new ResolvedValueCache(10);
+
+    @BeforeEach
+    void before() {
+        keyValueResolver.setResolvedValueCache(cache);
+        keyValueResolver.set("key", "default", null);
+        keyValueResolver.set("key", "overridden", null, "a", "*");
+    }
+
+    @Test
+    void maximumSizeMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new ResolvedValueCache(0));
+    }
+
+    @Test
+    void repeatedQueriesAreServedFromTheCache() {
+        assertThat((String) keyValueResolver.get("key", "a", "b")).isEqualTo("overridden");
+        assertThat((String) keyValueResolver.get("key", "a", "b")).isEqualTo("overridden");
+        assertThat((String) keyValueResolver.get("key", "x", "b")).isEqualTo("default");
+        assertThat(cache.getMissCount()).isEqualTo(2);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getSize()).isEqualTo(2);
+    }
+
+    @Test
+    void queriesWithoutAMatchStillGiveTheProvidedDefault() {
+        keyValueResolver.set("other", "value", null, "a");
+        assertThat(keyValueResolver.getOrDefault("other", "first", "x")).isEqualTo("first");
+        assertThat(keyValueResolver.getOrDefault("other", "second", "x")).isEqualTo("second");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void changingAKeyInvalidatesItsCachedValues() {
+        assertThat((String) keyValueResolver.get("key", "a", "b")).isEqualTo("overridden");
+        keyValueResolver.set("key", "changed", null, "a", "b");
+        assertThat(cache.getSize()).isZero();
+        assertThat((String) keyValueResolver.get("key", "a", "b")).isEqualTo("changed");
+        keyValueResolver.remove("key", "a", "b");
+        assertThat((String) keyValueResolver.get("key", "a", "b")).isEqualTo("overridden");
+        keyValueResolver.removeAllMatching("key", "a");
+        assertThat((String) keyValueResolver.get("key", "a", "b")).isEqualTo("default");
+        assertThat(cache.getHitCount()).isZero();
+    }
+
+    @Test
+    void activeChangeSetsArePartOfTheCacheKey() {
+        keyValueResolver.setWithChangeSet("key", "changeSetValue", null, "changeSet", "a");
+        DomainResolver withChangeSet = new MapBackedDomainResolver().set("dom1", "a").addActiveChangeSets("changeSet");
+        DomainResolver withoutChangeSet = new MapBackedDomainResolver().set("dom1", "a");
+        assertThat((String) keyValueResolver.get("key", withChangeSet)).isEqualTo("changeSetValue");
+        assertThat((String) keyValueResolver.get("key", withoutChangeSet)).isEqualTo("overridden");
+        keyValueResolver.removeChangeSet("changeSet");
+        assertThat((String) keyValueResolver.get("key", withChangeSet)).isEqualTo("overridden");
+    }
+
+    @Test
+    void duplicateActiveChangeSetsAreServedFromTheCache() {
+        keyValueResolver.setWithChangeSet("key", "changeSetValue", null, "changeSet", "a");
+        DomainResolver withDuplicates = new DomainResolver() {
+            @Override
+            public String getDomainValue(String domain) {
+                return "dom1".equals(domain) ? "a" : null;
+            }
+
+            @Override
+            public Collection<String> getActiveChangeSets() {
+                return List.of("changeSet", "changeSet");
+            }
+        };
+        assertThat((String) keyValueResolver.get("key", withDuplicates)).isEqualTo("changeSetValue");
+        assertThat((String) keyValueResolver.get("key", withDuplicates)).isEqualTo("changeSetValue");
+        assertThat(cache.getHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    void frequentlyUsedValuesSurviveEviction() {
+        for (int i = 0; i < 5; i++) {
+            keyValueResolver.get("key", "a", "b");
+        }
+        for (int i = 0; i < 20; i++) {
+            keyValueResolver.get("key", "x" + i, "b");
+        }
+        assertThat(cache.getSize()).isLessThanOrEqualTo(10);
+        assertThat(cache.getEvictionCount()).isPositive();
+        long hits = cache.getHitCount();
+        keyValueResolver.get("key", "a", "b");
+        assertThat(cache.getHitCount()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    void cachingCanBeDisabled() {
+        keyValueResolver.setResolvedValueCache(null);
+        assertThat((String) keyValueResolver.get("key", "a", "b")).isEqualTo("overridden");
+        assertThat(cache.getMissCount()).isZero();
+    }
+}
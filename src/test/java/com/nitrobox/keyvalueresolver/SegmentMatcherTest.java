@@ -0,0 +1,81 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+class SegmentMatcherTest {
+
+    @Test
+    void wildcardMatchesAnyDomainValue() {
+        SegmentMatcher matcher = new SegmentMatcher("*|CH|*|3|");
+        assertThat(matcher.matches("de|CH|x|3|")).isTrue();
+        assertThat(matcher.matches("fr|CH|yz|3|")).isTrue();
+        assertThat(matcher.matches("de|DE|x|3|")).isFalse();
+        assertThat(matcher.matches("de|CH|x|33|")).isFalse();
+    }
+
+    @Test
+    void wildcardMatchesEmptyDomainValue() {
+        assertThat(new SegmentMatcher("*|b|").matches("|b|")).isTrue();
+    }
+
+    @Test
+    void domainValuesAfterThePatternAreIgnored() {
+        SegmentMatcher matcher = new SegmentMatcher("a|*|");
+        assertThat(matcher.matches("a|b|c|d|")).isTrue();
+        assertThat(matcher.matches("a|")).isFalse();
+    }
+
+    @Test
+    void segmentsMustMatchCompletely() {
+        SegmentMatcher matcher = new SegmentMatcher("*|ab|");
+        assertThat(matcher.matches("x|a|")).isFalse();
+        assertThat(matcher.matches("x|abc|")).isFalse();
+        assertThat(matcher.matches("x|ab|")).isTrue();
+    }
+
+    @Test
+    void wildcardWithinASegmentMatchesLikeAGlob() {
+        SegmentMatcher matcher = new SegmentMatcher("de*|*|");
+        assertThat(matcher.matches("de|x|")).isTrue();
+        assertThat(matcher.matches("de_CH|x|")).isTrue();
+        assertThat(matcher.matches("fr|x|")).isFalse();
+        assertThat(new SegmentMatcher("a*b|").matches("axxb|")).isTrue();
+        assertThat(new SegmentMatcher("a*b|").matches("axxb_|")).isFalse();
+    }
+
+    @Test
+    void regularExpressionCharactersAreMatchedLiterally() {
+        SegmentMatcher matcher = new SegmentMatcher("*|a.c|");
+        assertThat(matcher.matches("x|a.c|")).isTrue();
+        assertThat(matcher.matches("x|abc|")).isFalse();
+    }
+
+    @Test
+    void matchesResolvedDomainValues() {
+        SegmentMatcher matcher = new SegmentMatcher("*|CH|");
+        assertThat(matcher.matches(new String[]{"de", "CH", "x"}, 3)).isTrue();
+        assertThat(matcher.matches(new String[]{"de", "CH", "x"}, 1)).isFalse();
+        assertThat(matcher.matches(new String[]{"de", "DE"}, 2)).isFalse();
+        assertThat(new SegmentMatcher("*|a*|").matches(new String[]{null, "abc"}, 2)).isTrue();
+        assertThat(new SegmentMatcher("").matches(new String[0], 0)).isTrue();
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.Test;
+
+class StreamingPersistenceTest {
+
+    private final StreamingPersistence persistence = mock(StreamingPersistence.class);
+
+    private static KeyValues keyValues(String key, DomainSpecificValueFactory domainSpecificValueFactory) {
+        KeyValues keyValues = new KeyValues(key, domainSpecificValueFactory);
+        keyValues.put("value of " + key);
+        keyValues.put("german value of " + key, "DE");
+        return keyValues;
+    }
+
+    @Test
+    void valuesAreStreamedInsteadOfLoadedAll() {
+        AtomicBoolean closed = new AtomicBoolean();
+        when(persistence.getLoadParallelism()).thenReturn(1);
+        when(persistence.streamAll(any())).thenAnswer(invocation -> Stream.of("key1", "key2")
+                .map(key -> keyValues(key, invocation.getArgument(0)))
+                .onClose(() -> closed.set(true)));
+
+        KeyValueResolver keyValueResolver = new KeyValueResolverImpl(persistence, "country");
+
+        assertThat((String) keyValueResolver.get("key1")).isEqualTo("value of key1");
+        assertThat((String) keyValueResolver.get("key2", "DE")).isEqualTo("german value of key2");
+        assertThat(closed).isTrue();
+        verify(persistence, never()).loadAll(any(DomainSpecificValueFactory.class));
+    }
+
+    @Test
+    void valuesAreAddedInParallel() {
+        when(persistence.getLoadParallelism()).thenReturn(4);
+        when(persistence.sizeHint()).thenReturn(10_000L);
+        when(persistence.streamAll(any())).thenAnswer(invocation -> IntStream.range(0, 10_000)
+                .mapToObj(i -> keyValues("key" + i, invocation.getArgument(0))));
+
+        KeyValueResolver keyValueResolver = new KeyValueResolverImpl(persistence, "country");
+
+        assertThat(keyValueResolver.getAllKeyValues()).hasSize(10_000);
+        assertThat((String) keyValueResolver.get("key9999", "DE")).isEqualTo("german value of key9999");
+    }
+
+    @Test
+    void patternsAreEncodedByTheThreadsLoadingInParallel() {
+        ValuesStore valuesStore = new ValuesStore();
+        KeyValues keyValues = keyValues("key", new DefaultDomainSpecificValueFactory());
+
+        valuesStore.setAllValues(Stream.of(keyValues), 1, 4);
+
+        assertThat(keyValues.getDomainValueDictionary().size()).isEqualTo(2); // the wildcard and DE
+    }
+
+    @Test
+    void loadParallelismMustBePositive() {
+        ValuesStore valuesStore = new ValuesStore();
+        assertThrows(IllegalArgumentException.class, () -> valuesStore.setAllValues(Stream.empty(), -1, 0));
+    }
+}
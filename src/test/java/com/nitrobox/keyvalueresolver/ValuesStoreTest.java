@@ -22,18 +22,35 @@
 package com.nitrobox.keyvalueresolver;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.ByteArrayOutputStream;
 import java.io.PrintStream;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -57,6 +74,35 @@ class ValuesStoreTest {
         valuesStore.setDomainSpecificValueFactory(domainSpecificValueFactory);
     }
 
+    @Test
+    void removedChangeSetsGiveTheirBitsBack() {
+        for (int i = 0; i < 70; i++) {
+            valuesStore.setWithChangeSet("key", null, "changeSet" + i, "value");
+            valuesStore.getValuesFor("key").get(List.of(), null, null); // builds the index, registering the change set
+            valuesStore.removeChangeSet("changeSet" + i);
+        }
+
+        assertThat(valuesStore.getChangeSetRegistry().size()).isZero();
+        assertThat(valuesStore.getChangeSetRegistry().bitOf("fresh")).isNotZero();
+    }
+
+    @Test
+    void domainValueDictionaryStaysBoundedWhenValuesAreRemovedAndAddedAgain() {
+        for (int i = 0; i < 100; i++) {
+            valuesStore.setWithChangeSet("key", null, "changeSet", "value", "domain" + i);
+            valuesStore.getValuesFor("key").get(List.of(), null, null); // builds the index, encoding the pattern
+            valuesStore.removeChangeSet("changeSet");
+        }
+        for (int i = 0; i < 100; i++) {
+            final KeyValues reloaded = new KeyValues("key", domainSpecificValueFactory);
+            reloaded.put("value", "domain" + i);
+            valuesStore.setAllValues(List.of(reloaded));
+            valuesStore.getValuesFor("key").get(List.of(), null, null);
+        }
+
+        assertThat(valuesStore.getDomainValueDictionary().size()).isLessThanOrEqualTo(2); // the wildcard and the last domain value
+    }
+
     @Test
     void valuesAreEmptyOnInitialization() {
         assertThat(valuesStore.getAllValues()).isEmpty();
@@ -82,6 +128,31 @@ class ValuesStoreTest {
         assertThat(valuesStore.getAllValues()).hasSize(1);
     }
 
+    @Test
+    void setAllValuesReplacesAllValuesAtOnce() {
+        valuesStore.setAllValues(List.of(keyValues));
+        Collection<KeyValues> oldValues = valuesStore.getAllValues();
+        KeyValues otherKeyValues = new KeyValues("other", domainSpecificValueFactory);
+
+        valuesStore.setAllValues(List.of(otherKeyValues));
+
+        assertThat(oldValues).containsExactly(keyValues);
+        assertThat(valuesStore.getAllValues()).containsExactly(otherKeyValues);
+        assertThat(valuesStore.getValuesFor("key")).isNull();
+    }
+
+    @Test
+    void readsTakeNoLockButWritesDo() {
+        valuesStore.setAllValues(List.of(keyValues));
+        valuesStore.getValuesFor("key");
+        valuesStore.getKeyValuesFromMapOrPersistence("key");
+        assertThat(valuesStore.getLock().getReadLockCount()).isZero();
+
+        valuesStore.setWithChangeSet("key", null, null, "value");
+        assertThat(valuesStore.getLock().getReadLockCount()).isPositive();
+        assertThat(valuesStore.getLock().getWriteLockCount()).isEqualTo(1);
+    }
+
     @Test
     void loadUnknownValuesFromPersistence() {
         when(persistence.load("key", domainSpecificValueFactory)).thenReturn(keyValues);
@@ -105,6 +176,112 @@ class ValuesStoreTest {
         assertThat(valuesStore.getAllValues()).hasSize(1);
     }
 
+    @Test
+    void concurrentMissesOfAKeyShareOneLoad() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        when(persistence.load("key", domainSpecificValueFactory)).thenAnswer(invocation -> {
+            loads.incrementAndGet();
+            release.await(5, TimeUnit.SECONDS);
+            return keyValues;
+        });
+        List<Future<KeyValues>> results = getConcurrently("key", 8, release);
+
+        for (Future<KeyValues> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isSameAs(keyValues);
+        }
+        assertThat(loads).hasValue(1);
+    }
+
+    @Test
+    void aFailedLoadIsPropagatedToAllWaitingCallers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(persistence.load("key", domainSpecificValueFactory)).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            throw new IllegalStateException("database down");
+        });
+        List<Future<KeyValues>> results = getConcurrently("key", 4, release);
+
+        for (Future<KeyValues> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("database down");
+        }
+        assertThat(valuesStore.getValuesFor("key")).isNull();
+    }
+
+    @Test
+    void missesOfConcurrentCallersAreLoadedInOneBatch() throws Exception {
+        valuesStore.setLoadBatching(Duration.ofSeconds(10), 3);
+        when(persistence.loadAll(anyCollection(), eq(domainSpecificValueFactory))).thenAnswer(invocation -> {
+            Collection<String> keys = invocation.getArgument(0);
+            return keys.stream().filter(key -> !key.equals("missing")).map(key -> new KeyValues(key, domainSpecificValueFactory))
+                    .collect(Collectors.toList());
+        });
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        Future<KeyValues> key1 = executor.submit(() -> valuesStore.getKeyValuesFromMapOrPersistence("key1"));
+        Future<KeyValues> key2 = executor.submit(() -> valuesStore.getKeyValuesFromMapOrPersistence("key2"));
+        Future<KeyValues> missing = executor.submit(() -> valuesStore.getKeyValuesFromMapOrPersistence("missing"));
+        executor.shutdown();
+
+        assertThat(key1.get(5, TimeUnit.SECONDS).getKey()).isEqualTo("key1");
+        assertThat(key2.get(5, TimeUnit.SECONDS).getKey()).isEqualTo("key2");
+        assertThat(missing.get(5, TimeUnit.SECONDS)).isNull();
+        verify(persistence).loadAll(eq(Set.of("key1", "key2", "missing")), eq(domainSpecificValueFactory));
+        verify(persistence, never()).load(anyString(), any());
+    }
+
+    @Test
+    void aWriteWaitingForABatchOfLoadsHoldsNoLock() throws InterruptedException {
+        valuesStore.setLoadBatching(Duration.ofSeconds(10), 2);
+        when(persistence.loadAll(anyCollection(), eq(domainSpecificValueFactory))).thenReturn(List.of());
+        Thread writer = new Thread(() -> valuesStore.setWithChangeSet("key", null, null, "value"));
+        writer.start();
+        waitUntil(() -> writer.getState() == Thread.State.TIMED_WAITING);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> valuesStore.removeChangeSet("changeSet"));
+
+        valuesStore.getKeyValuesFromMapOrPersistence("other"); // fills the batch
+        writer.join();
+        assertThat(valuesStore.getValuesFor("key")).isNotNull();
+    }
+
+    @Test
+    void loadBatchingNeedsAPositiveWindowAndSize() {
+        assertThrows(IllegalArgumentException.class, () -> valuesStore.setLoadBatching(Duration.ZERO, 10));
+        assertThrows(IllegalArgumentException.class, () -> valuesStore.setLoadBatching(Duration.ofMillis(1), 0));
+    }
+
+    /**
+     * Get a key from several threads at once, releasing the load only when all threads wait for it.
+     */
+    private List<Future<KeyValues>> getConcurrently(String key, int threads, CountDownLatch release) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Thread> callers = new ArrayList<>();
+        List<Future<KeyValues>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                synchronized (callers) {
+                    callers.add(Thread.currentThread());
+                }
+                return valuesStore.getKeyValuesFromMapOrPersistence(key);
+            }));
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!allWaiting(callers, threads) && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        release.countDown();
+        executor.shutdown();
+        return results;
+    }
+
+    private static boolean allWaiting(List<Thread> callers, int threads) {
+        synchronized (callers) {
+            return callers.size() == threads && callers.stream()
+                    .allMatch(t -> t.getState() == Thread.State.WAITING || t.getState() == Thread.State.TIMED_WAITING);
+        }
+    }
+
     @Test
     void valueShouldBeAdded() {
         KeyValues result = valuesStore.getOrCreateKeyValues("key", "description");
@@ -153,6 +330,98 @@ class ValuesStoreTest {
         assertThat(valuesStore.getAllValues()).hasSize(1);
     }
 
+    @Test
+    void aSlowWriteOfOneKeyDoesNotBlockWritesOfOtherKeys() throws InterruptedException {
+        CountDownLatch storing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        doAnswer(invocation -> {
+            if ("slow".equals(invocation.getArgument(0))) {
+                storing.countDown();
+                release.await(5, TimeUnit.SECONDS);
+            }
+            return null;
+        }).when(persistence).store(anyString(), any(), any());
+        Thread slowWriter = new Thread(() -> valuesStore.setWithChangeSet("slow", null, null, "value"));
+        slowWriter.start();
+        storing.await(5, TimeUnit.SECONDS);
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> valuesStore.setWithChangeSet("fast", null, null, "value"));
+        assertThat(valuesStore.getValuesFor("fast")).isNotNull();
+        assertThat(valuesStore.getValuesFor("slow")).isNotNull();
+
+        release.countDown();
+        slowWriter.join();
+    }
+
+    @Test
+    void aLoadAWriterWaitsForFinishesWhileAnotherWriterWaitsForTheLock() throws InterruptedException {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(persistence.load("key", domainSpecificValueFactory)).thenAnswer(invocation -> {
+            loading.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return keyValues;
+        });
+        Thread loader = new Thread(() -> valuesStore.getKeyValuesFromMapOrPersistence("key"));
+        loader.start();
+        loading.await(5, TimeUnit.SECONDS);
+        Thread writer = new Thread(() -> valuesStore.setWithChangeSet("key", null, null, "value"));
+        writer.start();
+        waitUntil(() -> writer.getState() == Thread.State.WAITING);
+        Thread storeWriter = new Thread(() -> valuesStore.removeChangeSet("changeSet"));
+        storeWriter.start();
+        waitUntil(() -> valuesStore.getLock().hasQueuedThreads() || !storeWriter.isAlive());
+
+        release.countDown();
+
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            loader.join();
+            writer.join();
+            storeWriter.join();
+        });
+        assertThat(valuesStore.getValuesFor("key").getDomainSpecificValues()).extracting(DomainSpecificValue::getValue)
+                .containsExactly("value");
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    void readsAndWritesDoNotWaitWhileReloadBuildsTheNewValues() throws InterruptedException {
+        keyValues.put("old value");
+        valuesStore.setAllValues(List.of(keyValues));
+        KeyValues newKeyValues = new KeyValues("key", domainSpecificValueFactory);
+        newKeyValues.put("new value");
+        CountDownLatch building = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(persistence.reload(anyCollection(), any())).thenReturn(new ArrayList<>(List.of(newKeyValues)) {
+            @Override
+            public void forEach(Consumer<? super KeyValues> action) {
+                building.countDown();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                super.forEach(action);
+            }
+        });
+        Thread reloader = new Thread(() -> valuesStore.reload());
+        reloader.start();
+        building.await(5, TimeUnit.SECONDS);
+
+        assertThat(valuesStore.getValuesFor("key")).isSameAs(keyValues);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> valuesStore.setWithChangeSet("other", null, null, "value"));
+
+        release.countDown();
+        reloader.join();
+        assertThat(valuesStore.getValuesFor("key")).isSameAs(newKeyValues);
+    }
+
     @Test
     void reloadASingleKey() {
         final String key = "key";
@@ -0,0 +1,240 @@
+/*
+ * KeyValueResolver - An dynamic Key-Value Store
+ * Copyright (C) 2022 Nitrobox GmbH
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.nitrobox.keyvalueresolver;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+class WriteBehindPersistenceTest {
+
+    private final Persistence persistence = mock(Persistence.class, CALLS_REAL_METHODS); // storeAll and removeAll call store and remove
+    private final DomainSpecificValueFactory domainSpecificValueFactory = new DefaultDomainSpecificValueFactory();
+    private final KeyValues keyValues = new KeyValues("key", domainSpecificValueFactory);
+    private WriteBehindPersistence writeBehindPersistence = WriteBehindPersistence.of(persistence, 100, Duration.ofHours(1));
+
+    @AfterEach
+    void after() {
+        writeBehindPersistence.close();
+    }
+
+    @Test
+    void queueSizeAndFlushIntervalAreChecked() {
+        assertThrows(IllegalArgumentException.class, () -> WriteBehindPersistence.of(persistence, 0, Duration.ofSeconds(1)));
+        assertThrows(IllegalArgumentException.class, () -> WriteBehindPersistence.of(persistence, 10, Duration.ofSeconds(-1)));
+    }
+
+    @Test
+    void writesDoNotReachThePersistenceBeforeTheyAreFlushed() {
+        DomainSpecificValue value = keyValues.put("value");
+
+        writeBehindPersistence.store("key", keyValues, value);
+
+        verify(persistence, never()).store(any(), any(), any());
+        assertThat(writeBehindPersistence.getPendingWriteCount()).isEqualTo(1);
+        writeBehindPersistence.flush();
+        verify(persistence).store("key", keyValues, value);
+        assertThat(writeBehindPersistence.getPendingWriteCount()).isZero();
+        assertThat(writeBehindPersistence.getFlushedWriteCount()).isEqualTo(1);
+    }
+
+    @Test
+    void repeatedWritesOfAValueAreMergedIntoOneWrite() {
+        DomainSpecificValue value = keyValues.put("first", "DE");
+        writeBehindPersistence.store("key", keyValues, value);
+        value = keyValues.put("second", "DE");
+        writeBehindPersistence.store("key", keyValues, value);
+        DomainSpecificValue otherValue = keyValues.put("other", "AT");
+        writeBehindPersistence.store("key", keyValues, otherValue);
+
+        writeBehindPersistence.flush();
+
+        verify(persistence).store("key", keyValues, value);
+        verify(persistence).store("key", keyValues, otherValue);
+        verify(persistence, times(2)).store(any(), any(), any());
+        assertThat(writeBehindPersistence.getCoalescedWriteCount()).isEqualTo(1);
+    }
+
+    @Test
+    void removingAValueReplacesItsQueuedStore() {
+        DomainSpecificValue value = keyValues.put("value", "DE");
+        writeBehindPersistence.store("key", keyValues, value);
+        writeBehindPersistence.remove("key", value);
+
+        writeBehindPersistence.flush();
+
+        verify(persistence, never()).store(any(), any(), any());
+        verify(persistence).remove("key", value);
+    }
+
+    @Test
+    void removingAKeyDropsItsQueuedWritesAndKeepsLaterOnes() {
+        DomainSpecificValue value = keyValues.put("value", "DE");
+        writeBehindPersistence.store("key", keyValues, value);
+        writeBehindPersistence.remove("key");
+        DomainSpecificValue laterValue = keyValues.put("later", "AT");
+        writeBehindPersistence.store("key", keyValues, laterValue);
+
+        writeBehindPersistence.flush();
+
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).remove("key");
+        inOrder.verify(persistence).store("key", keyValues, laterValue);
+        verify(persistence, never()).store("key", keyValues, value);
+        assertThat(writeBehindPersistence.getCoalescedWriteCount()).isEqualTo(1);
+    }
+
+    @Test
+    void loadingAKeyWritesItsQueuedWritesFirst() {
+        DomainSpecificValue value = keyValues.put("value");
+        writeBehindPersistence.store("key", keyValues, value);
+
+        writeBehindPersistence.load("key", domainSpecificValueFactory);
+        writeBehindPersistence.load("otherKey", domainSpecificValueFactory);
+
+        InOrder inOrder = inOrder(persistence);
+        inOrder.verify(persistence).store("key", keyValues, value);
+        inOrder.verify(persistence).load("key", domainSpecificValueFactory);
+        inOrder.verify(persistence).load("otherKey", domainSpecificValueFactory);
+    }
+
+    @Test
+    void writesAreFlushedInTheBackgroundAfterTheFlushInterval() {
+        writeBehindPersistence.close();
+        writeBehindPersistence = WriteBehindPersistence.of(persistence, 100, Duration.ofMillis(10));
+        DomainSpecificValue value = keyValues.put("value");
+
+        writeBehindPersistence.store("key", keyValues, value);
+
+        verify(persistence, timeout(5000)).store("key", keyValues, value);
+    }
+
+    @Test
+    void aFullQueueIsFlushedRightAway() {
+        writeBehindPersistence.close();
+        writeBehindPersistence = WriteBehindPersistence.of(persistence, 2, Duration.ofHours(1));
+
+        for (int i = 0; i < 5; i++) {
+            writeBehindPersistence.store("key", keyValues, keyValues.put("value", "domain" + i));
+        }
+
+        verify(persistence, timeout(5000).atLeast(4)).store(eq("key"), eq(keyValues), any());
+    }
+
+    @Test
+    void closingWritesQueuedWritesAndRejectsLaterWrites() {
+        DomainSpecificValue value = keyValues.put("value");
+        writeBehindPersistence.store("key", keyValues, value);
+
+        writeBehindPersistence.close();
+
+        verify(persistence).store("key", keyValues, value);
+        assertThrows(IllegalStateException.class, () -> writeBehindPersistence.store("key", keyValues, value));
+    }
+
+    @Test
+    void aFailedWriteIsThrownByFlushAndDoesNotStopOtherWrites() {
+        DomainSpecificValue value = keyValues.put("value");
+        doThrow(new IllegalStateException("no connection")).when(persistence).remove("otherKey");
+        writeBehindPersistence.remove("otherKey");
+        writeBehindPersistence.store("key", keyValues, value);
+
+        assertThatThrownBy(() -> writeBehindPersistence.flush()).hasMessage("no connection");
+
+        verify(persistence).store("key", keyValues, value);
+        assertThat(writeBehindPersistence.getFailedWriteCount()).isEqualTo(1);
+        assertThat(writeBehindPersistence.getFlushedWriteCount()).isEqualTo(1);
+    }
+
+    @Test
+    void queuedValuesAreWrittenInOneBatch() {
+        KeyValues otherKeyValues = new KeyValues("otherKey", domainSpecificValueFactory);
+        DomainSpecificValue value = keyValues.put("value");
+        DomainSpecificValue otherValue = otherKeyValues.put("other");
+        DomainSpecificValue removedValue = otherKeyValues.put("removed", "DE");
+        writeBehindPersistence.storeAll(Map.of(keyValues, List.of(value), otherKeyValues, List.of(otherValue)));
+        writeBehindPersistence.remove("otherKey", removedValue);
+
+        writeBehindPersistence.flush();
+
+        verify(persistence).storeAll(Map.of(keyValues, List.of(value), otherKeyValues, List.of(otherValue)));
+        verify(persistence).removeAll(Map.of(otherKeyValues, List.of(removedValue)));
+    }
+
+    @Test
+    void deltaAndStreamingPersistencesAreDecoratedKeepingThem() {
+        DeltaPersistence deltaPersistence = mock(DeltaPersistence.class);
+        StreamingPersistence streamingPersistence = mock(StreamingPersistence.class);
+
+        try (WriteBehindPersistence delta = WriteBehindPersistence.of(deltaPersistence, 10, Duration.ofSeconds(1));
+                WriteBehindPersistence streaming = WriteBehindPersistence.of(streamingPersistence, 10, Duration.ofSeconds(1))) {
+            assertThat(delta).isInstanceOf(DeltaPersistence.class).isNotInstanceOf(StreamingPersistence.class);
+            assertThat(streaming).isInstanceOf(StreamingPersistence.class).isNotInstanceOf(DeltaPersistence.class);
+        }
+    }
+
+    @Test
+    void changesAreReadAfterWritingTheQueue() {
+        DeltaPersistence deltaPersistence = mock(DeltaPersistence.class, CALLS_REAL_METHODS);
+        writeBehindPersistence.close();
+        writeBehindPersistence = WriteBehindPersistence.of(deltaPersistence, 100, Duration.ofHours(1));
+        DomainSpecificValue value = keyValues.put("value");
+        writeBehindPersistence.store("key", keyValues, value);
+
+        ((DeltaPersistence) writeBehindPersistence).changesSince(3, domainSpecificValueFactory);
+
+        InOrder inOrder = inOrder(deltaPersistence);
+        inOrder.verify(deltaPersistence).store("key", keyValues, value);
+        inOrder.verify(deltaPersistence).changesSince(3, domainSpecificValueFactory);
+    }
+
+    @Test
+    void valuesAreStreamedAfterWritingTheQueue() {
+        StreamingPersistence streamingPersistence = mock(StreamingPersistence.class, CALLS_REAL_METHODS);
+        doReturn(Stream.of(keyValues)).when(streamingPersistence).streamAll(domainSpecificValueFactory);
+        writeBehindPersistence.close();
+        writeBehindPersistence = WriteBehindPersistence.of(streamingPersistence, 100, Duration.ofHours(1));
+        DomainSpecificValue value = keyValues.put("value");
+        writeBehindPersistence.store("key", keyValues, value);
+
+        assertThat(((StreamingPersistence) writeBehindPersistence).streamAll(domainSpecificValueFactory)).containsExactly(keyValues);
+
+        InOrder inOrder = inOrder(streamingPersistence);
+        inOrder.verify(streamingPersistence).store("key", keyValues, value);
+        inOrder.verify(streamingPersistence).streamAll(domainSpecificValueFactory);
+    }
+}